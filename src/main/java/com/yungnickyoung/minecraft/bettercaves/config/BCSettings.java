@@ -18,9 +18,11 @@ public class BCSettings {
     static {
         // Calculate coefficients used for bilinear interpolation during noise calculation.
         // These are initialized one time here to avoid redundant computation later on.
+        // Interpolation is between lattice nodes SUB_CHUNK_SIZE blocks apart, i.e. the first block of this sub-chunk
+        // and the first block of the next one.
         for (int n = 0; n < SUB_CHUNK_SIZE; n++) {
-            START_COEFFS[n] = (float)(SUB_CHUNK_SIZE - 1 - n) / (SUB_CHUNK_SIZE - 1);
-            END_COEFFS[n] = (float)(n) / (SUB_CHUNK_SIZE - 1);
+            START_COEFFS[n] = (float)(SUB_CHUNK_SIZE - n) / SUB_CHUNK_SIZE;
+            END_COEFFS[n] = (float)(n) / SUB_CHUNK_SIZE;
         }
     }
 
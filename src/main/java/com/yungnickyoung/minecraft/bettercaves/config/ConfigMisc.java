@@ -9,6 +9,7 @@ public class ConfigMisc {
     public final ForgeConfigSpec.ConfigValue<Boolean> replaceFloatingGravel;
     public final ForgeConfigSpec.ConfigValue<Boolean> overrideSurfaceDetection;
     public final ForgeConfigSpec.ConfigValue<Boolean> enableFloodedUnderground;
+    public final ForgeConfigSpec.ConfigValue<Integer> noiseCacheSize;
 
     public ConfigMisc(final ForgeConfigSpec.Builder BUILDER) {
         BUILDER
@@ -64,6 +65,15 @@ public class ConfigMisc {
             .worldRestart()
             .define("Enable Flooded Underground", true);
 
+        noiseCacheSize = BUILDER
+            .comment(
+                " Approximate amount of memory, in megabytes, used to cache cave and cavern noise along chunk borders\n" +
+                "     in each dimension. Neighboring chunks reuse this noise instead of calculating it again.\n" +
+                "     Set to 0 to disable the cache.\n" +
+                " Default: 16")
+            .worldRestart()
+            .defineInRange("Noise Cache Size", 16, 0, 1024);
+
         BUILDER.pop();
     }
 }
@@ -78,6 +78,7 @@ public class ConfigCubicCave {
         public final double yAdjustF1;
         public final double yAdjustF2;
         public final String noiseType;
+        public final int ySampleInterval;
 
         public Advanced() {
             noiseThreshold = .95;
@@ -89,6 +90,7 @@ public class ConfigCubicCave {
             yAdjustF1 = .9;
             yAdjustF2 = .9;
             noiseType = "CubicFractal";
+            ySampleInterval = 2;
         }
     }
 }
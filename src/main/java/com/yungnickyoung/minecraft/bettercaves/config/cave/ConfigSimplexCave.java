@@ -78,6 +78,7 @@ public class ConfigSimplexCave {
         public final double yAdjustF1;
         public final double yAdjustF2;
         public final String noiseType;
+        public final int ySampleInterval;
 
         public Advanced() {
             noiseThreshold = .82;
@@ -89,6 +90,7 @@ public class ConfigSimplexCave {
             yAdjustF1 = .95;
             yAdjustF2 = .5;
             noiseType = "SimplexFractal";
+            ySampleInterval = 4;
         }
     }
 }
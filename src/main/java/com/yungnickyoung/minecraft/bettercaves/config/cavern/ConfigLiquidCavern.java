@@ -67,6 +67,7 @@ public class ConfigLiquidCavern {
         public final double fractalFrequency;
         public final int numGenerators;
         public final String noiseType;
+        public final int ySampleInterval;
 
         public Advanced() {
             noiseThreshold = .6;
@@ -75,6 +76,7 @@ public class ConfigLiquidCavern {
             fractalFrequency = .03;
             numGenerators = 2;
             noiseType = "SimplexFractal";
+            ySampleInterval = 4;
         }
     }
 }
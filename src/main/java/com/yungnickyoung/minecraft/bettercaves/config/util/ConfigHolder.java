@@ -184,6 +184,9 @@ public class ConfigHolder {
         enableFloodedUnderground = new ConfigOption<>("Enable Flooded Underground", Configuration.caveSettings.miscellaneous.enableFloodedUnderground.get())
             .setCategory("Better Caves.Underground Generation.miscellaneous")
             .addToMap(properties);
+        noiseCacheSize = new ConfigOption<>("Noise Cache Size", Configuration.caveSettings.miscellaneous.noiseCacheSize.get())
+            .setCategory("Better Caves.Underground Generation.miscellaneous")
+            .addToMap(properties);
 
         // Bedrock settings
         flattenBedrock = new ConfigOption<>("Flatten Bedrock", Configuration.bedrockSettings.flattenBedrock.get())
@@ -239,6 +242,10 @@ public class ConfigHolder {
             .setCategory("Better Caves.Underground Generation.Caves.Type 1 Caves.Advanced Settings")
             .addToMap(properties)
             .hidden();
+        cubicCaveYSampleInterval = new ConfigOption<>("Vertical Sample Interval", Configuration.caveSettings.caves.cubicCave.advancedSettings.ySampleInterval)
+            .setCategory("Better Caves.Underground Generation.Caves.Type 1 Caves.Advanced Settings")
+            .addToMap(properties)
+            .hidden();
 
         // Simplex (Type 2) cave settings
         simplexCaveNoiseThreshold = new ConfigOption<>("Noise Threshold", Configuration.caveSettings.caves.simplexCave.advancedSettings.noiseThreshold)
@@ -277,6 +284,10 @@ public class ConfigHolder {
             .setCategory("Better Caves.Underground Generation.Caves.Type 2 Caves.Advanced Settings")
             .addToMap(properties)
             .hidden();
+        simplexCaveYSampleInterval = new ConfigOption<>("Vertical Sample Interval", Configuration.caveSettings.caves.simplexCave.advancedSettings.ySampleInterval)
+            .setCategory("Better Caves.Underground Generation.Caves.Type 2 Caves.Advanced Settings")
+            .addToMap(properties)
+            .hidden();
 
         //  Liquid cavern settings
         liquidCavernNoiseThreshold = new ConfigOption<>("Noise Threshold", Configuration.caveSettings.caverns.liquidCavern.advancedSettings.noiseThreshold)
@@ -303,6 +314,10 @@ public class ConfigHolder {
             .setCategory("Better Caves.Underground Generation.Caverns.Liquid Caverns.Advanced Settings")
             .addToMap(properties)
             .hidden();
+        liquidCavernYSampleInterval = new ConfigOption<>("Vertical Sample Interval", Configuration.caveSettings.caverns.liquidCavern.advancedSettings.ySampleInterval)
+            .setCategory("Better Caves.Underground Generation.Caverns.Liquid Caverns.Advanced Settings")
+            .addToMap(properties)
+            .hidden();
 
         // Floored cavern settings
         flooredCavernNoiseThreshold = new ConfigOption<>("Noise Threshold", Configuration.caveSettings.caverns.flooredCavern.advancedSettings.noiseThreshold)
@@ -329,6 +344,10 @@ public class ConfigHolder {
             .setCategory("Better Caves.Underground Generation.Caverns.Floored Caverns.Advanced Settings")
             .addToMap(properties)
             .hidden();
+        flooredCavernYSampleInterval = new ConfigOption<>("Vertical Sample Interval", Configuration.caveSettings.caverns.flooredCavern.advancedSettings.ySampleInterval)
+            .setCategory("Better Caves.Underground Generation.Caverns.Floored Caverns.Advanced Settings")
+            .addToMap(properties)
+            .hidden();
     }
 
     /* ============================== Settings Visible to User ============================== */
@@ -400,6 +419,7 @@ public class ConfigHolder {
     public ConfigOption<Boolean> replaceFloatingGravel;
     public ConfigOption<Boolean> overrideSurfaceDetection;
     public ConfigOption<Boolean> enableFloodedUnderground;
+    public ConfigOption<Integer> noiseCacheSize;
 
     // Bedrock settings
     public ConfigOption<Boolean> flattenBedrock;
@@ -422,6 +442,7 @@ public class ConfigHolder {
     public ConfigOption<Double>  cubicCaveYAdjustF1;
     public ConfigOption<Double>  cubicCaveYAdjustF2;
     public ConfigOption<String>  cubicCaveNoiseType;
+    public ConfigOption<Integer> cubicCaveYSampleInterval;
 
     // Simplex (Type 2) cave settings
     public ConfigOption<Double>  simplexCaveNoiseThreshold;
@@ -433,6 +454,7 @@ public class ConfigHolder {
     public ConfigOption<Double>  simplexCaveYAdjustF1;
     public ConfigOption<Double>  simplexCaveYAdjustF2;
     public ConfigOption<String>  simplexCaveNoiseType;
+    public ConfigOption<Integer> simplexCaveYSampleInterval;
 
     // Liquid cavern settings
     public ConfigOption<Double>  liquidCavernNoiseThreshold;
@@ -441,6 +463,7 @@ public class ConfigHolder {
     public ConfigOption<Double>  liquidCavernFractalFrequency;
     public ConfigOption<Integer> liquidCavernNumGenerators;
     public ConfigOption<String>  liquidCavernNoiseType;
+    public ConfigOption<Integer> liquidCavernYSampleInterval;
 
     // Floored cavern settings
     public ConfigOption<Double>  flooredCavernNoiseThreshold;
@@ -449,6 +472,7 @@ public class ConfigHolder {
     public ConfigOption<Double>  flooredCavernFractalFrequency;
     public ConfigOption<Integer> flooredCavernNumGenerators;
     public ConfigOption<String>  flooredCavernNoiseType;
+    public ConfigOption<Integer> flooredCavernYSampleInterval;
 
     public static class ConfigOption<T> {
         public String name;
@@ -0,0 +1,150 @@
+package com.yungnickyoung.minecraft.bettercaves.noise;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounded cache of noise lattice columns, shared by all carvers in a dimension.
+ * Chunks sharing a border sample the same lattice columns along it, so caching them lets each border column be
+ * calculated once instead of once per chunk.
+ *
+ * Entries are keyed by carver and column position, and spread across a fixed number of independently locked
+ * segments so that worldgen threads rarely contend with each other. Each segment evicts its least recently used
+ * columns once it exceeds its share of the memory budget.
+ */
+public class NoiseColumnCache {
+    /** Number of independently locked segments. Must be a power of two. */
+    private static final int NUM_SEGMENTS = 16;
+
+    /** Approximate per-entry overhead of the key, map entry and array header, in bytes */
+    private static final long ENTRY_OVERHEAD = 96;
+
+    private final Segment[] segments = new Segment[NUM_SEGMENTS];
+
+    /** Source of carver ids, so that carvers sharing this cache don't share entries */
+    private final AtomicInteger nextCarverId = new AtomicInteger();
+
+    /**
+     * @param maxBytes Approximate memory budget for the whole cache, in bytes. 0 disables the cache.
+     */
+    public NoiseColumnCache(long maxBytes) {
+        for (int i = 0; i < NUM_SEGMENTS; i++) {
+            segments[i] = new Segment(maxBytes / NUM_SEGMENTS);
+        }
+    }
+
+    /**
+     * @return a new id for a carver using this cache
+     */
+    public int newCarverId() {
+        return nextCarverId.getAndIncrement();
+    }
+
+    /**
+     * Copies a cached column into the given array, if present.
+     * @param carverId Id of the carver the column belongs to
+     * @param x The global x-coordinate of the column
+     * @param z The global z-coordinate of the column
+     * @param out The array to copy the column's values into
+     * @param offset Index in out at which to write the first value
+     * @param length Number of values in the column
+     * @param stride Distance in out between consecutive values of the column
+     * @return true if the column was found, false otherwise
+     */
+    public boolean get(int carverId, int x, int z, double[] out, int offset, int length, int stride) {
+        long key = getKey(carverId, x, z);
+        Segment segment = getSegment(key);
+        synchronized (segment) {
+            double[] column = segment.map.get(key);
+            if (column == null || column.length != length) {
+                return false;
+            }
+            if (stride == 1) {
+                System.arraycopy(column, 0, out, offset, length);
+            }
+            else {
+                for (int k = 0, index = offset; k < length; k++, index += stride) {
+                    out[index] = column[k];
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Caches a copy of a column, evicting least recently used columns if needed to stay within budget.
+     * @param carverId Id of the carver the column belongs to
+     * @param x The global x-coordinate of the column
+     * @param z The global z-coordinate of the column
+     * @param values The array containing the column's values
+     * @param offset Index in values of the column's first value
+     * @param length Number of values in the column
+     * @param stride Distance in values between consecutive values of the column
+     */
+    public void put(int carverId, int x, int z, double[] values, int offset, int length, int stride) {
+        long key = getKey(carverId, x, z);
+        Segment segment = getSegment(key);
+        long entrySize = getEntrySize(length);
+        if (entrySize > segment.maxBytes) {
+            return;
+        }
+
+        double[] column = new double[length];
+        if (stride == 1) {
+            System.arraycopy(values, offset, column, 0, length);
+        }
+        else {
+            for (int k = 0, index = offset; k < length; k++, index += stride) {
+                column[k] = values[index];
+            }
+        }
+
+        synchronized (segment) {
+            double[] previous = segment.map.put(key, column);
+            segment.bytes += entrySize;
+            if (previous != null) {
+                segment.bytes -= getEntrySize(previous.length);
+            }
+
+            // Evict least recently used columns until we're back within budget
+            Iterator<double[]> iterator = segment.map.values().iterator();
+            while (segment.bytes > segment.maxBytes && iterator.hasNext()) {
+                segment.bytes -= getEntrySize(iterator.next().length);
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Packs a carver id and column coordinates into a single key.
+     * 28 bits are used for each coordinate, which is more than enough to cover the world border.
+     */
+    private static long getKey(int carverId, int x, int z) {
+        return ((long) carverId << 56) | ((long) (x & 0xFFFFFFF) << 28) | (z & 0xFFFFFFF);
+    }
+
+    private Segment getSegment(long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return segments[(int) (hash >>> 60) & (NUM_SEGMENTS - 1)];
+    }
+
+    private static long getEntrySize(int length) {
+        return (long) length * Double.BYTES + ENTRY_OVERHEAD;
+    }
+
+    /**
+     * A single independently locked portion of the cache. All access must be synchronized on the segment.
+     */
+    private static class Segment {
+        /** Columns in access order, least recently used first */
+        private final Map<Long, double[]> map = new LinkedHashMap<>(64, .75f, true);
+        private final long maxBytes;
+        private long bytes = 0;
+
+        private Segment(long maxBytes) {
+            this.maxBytes = maxBytes;
+        }
+    }
+}
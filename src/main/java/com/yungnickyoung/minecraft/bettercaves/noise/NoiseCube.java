@@ -0,0 +1,109 @@
+package com.yungnickyoung.minecraft.bettercaves.noise;
+
+/**
+ * A cube of noise tuples backed by a single contiguous array.
+ * Tuples are stored column by column. All tuples for the column at (x, z) are contiguous and ordered by y,
+ * and the values of each tuple are stored next to each other.
+ *
+ * Cubes are meant to be reused - see {@link NoiseGen#interpolateNoiseCube}, which hands out a
+ * per-thread cube for each generator instead of allocating a new one for every sub-chunk.
+ */
+public class NoiseCube {
+    /** Number of values in each noise tuple */
+    private final int numGenerators;
+
+    /** Dimensions of the cube, in blocks */
+    private int sizeX, sizeZ, height;
+
+    /** Distance between the start of two adjacent columns in the backing array */
+    private int columnStride;
+
+    /** Backing array. May be longer than the cube currently needs, since it is only ever grown. */
+    private double[] values = new double[0];
+
+    /**
+     * Whether or not each row of the cube may have blocks carved. Inactive rows are not interpolated, so their
+     * values are undefined. Filled in by {@link NoiseGen#interpolateNoiseCube}.
+     */
+    private boolean[] activeRows = new boolean[0];
+
+    public NoiseCube(int numGenerators) {
+        this.numGenerators = numGenerators;
+    }
+
+    /**
+     * Sets the dimensions of this cube, growing the backing array if needed.
+     * The contents of the cube are undefined after this call.
+     */
+    public void resize(int sizeX, int sizeZ, int height) {
+        this.sizeX = sizeX;
+        this.sizeZ = sizeZ;
+        this.height = height;
+        this.columnStride = height * numGenerators;
+        int size = sizeX * sizeZ * columnStride;
+        if (values.length < size) {
+            values = new double[size];
+        }
+        if (activeRows.length < height) {
+            activeRows = new boolean[height];
+        }
+    }
+
+    /**
+     * @return index in the backing array of the first value of the column at (x, z).
+     * The value for generator i at y-offset y within this column is at {@code columnIndex + y * numGenerators + i}.
+     */
+    public int getColumnIndex(int x, int z) {
+        return (x * sizeZ + z) * columnStride;
+    }
+
+    public double get(int columnIndex, int yIndex, int generator) {
+        return values[columnIndex + yIndex * numGenerators + generator];
+    }
+
+    public void set(int columnIndex, int yIndex, int generator, double value) {
+        values[columnIndex + yIndex * numGenerators + generator] = value;
+    }
+
+    /**
+     * @return false if no block in the given row of this cube can be carved, in which case its values are undefined
+     */
+    public boolean isRowActive(int yIndex) {
+        return activeRows[yIndex];
+    }
+
+    /**
+     * Direct access to the active row flags, for tight loops.
+     */
+    public boolean[] getActiveRows() {
+        return activeRows;
+    }
+
+    /**
+     * Direct access to the backing array, for tight loops.
+     * Use {@link #getColumnIndex} to locate columns within it.
+     */
+    public double[] getValues() {
+        return values;
+    }
+
+    public int getNumGenerators() {
+        return numGenerators;
+    }
+
+    public int getSizeX() {
+        return sizeX;
+    }
+
+    public int getSizeZ() {
+        return sizeZ;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getColumnStride() {
+        return columnStride;
+    }
+}
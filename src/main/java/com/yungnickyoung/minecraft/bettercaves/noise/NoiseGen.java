@@ -4,10 +4,8 @@ import com.yungnickyoung.minecraft.bettercaves.config.BCSettings;
 import com.yungnickyoung.minecraft.yungsapi.noise.FastNoise;
 import com.yungnickyoung.minecraft.yungsapi.noise.INoiseLibrary;
 import com.yungnickyoung.minecraft.yungsapi.noise.OpenSimplex2S;
-import net.minecraft.util.math.BlockPos;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
 
 /**
  * Class used to generate noise tuples for blocks.
@@ -28,8 +26,51 @@ public class NoiseGen {
     /** Determines how horizontally large and stretched out caves are */
     private float xzCompression;
 
-    /** List of all primary noise generators, one for each octave */
-    private List<INoiseLibrary> listNoiseGens = new ArrayList<>();
+    /**
+     * Vertical distance between sampled noise values. Only y-coordinates that are multiples of this are sampled;
+     * values in between are linearly interpolated. 1 means every block is sampled.
+     */
+    private int ySampleInterval;
+
+    /** Interpolation coefficients for each y-offset between two vertically adjacent samples */
+    private float[] yStartCoeffs, yEndCoeffs;
+
+    /** All primary noise generators, one for each value in a noise tuple. They differ only by seed. */
+    private INoiseLibrary[] noiseGens;
+
+    /** Per-thread cube reused by every call to interpolateNoiseCube, so worldgen threads don't allocate one per sub-chunk */
+    private final ThreadLocal<NoiseCube> cubePool;
+
+    /** Per-thread lattice reused by every call to getNoiseLattice */
+    private final ThreadLocal<NoiseLattice> latticePool;
+
+    /** Cache of lattice columns shared with other carvers in this dimension. Null if caching is disabled. */
+    private NoiseColumnCache columnCache;
+
+    /** This NoiseGen's id within the column cache */
+    private int columnCacheId;
+
+    /**
+     * How carvers using this NoiseGen decide which blocks to carve. Used to find rows of each sub-chunk in which
+     * no block can be carved, so they can be skipped. See {@link #cullCellsBelowThreshold} and
+     * {@link #cullCellsAboveProductThreshold}.
+     */
+    private CullMode cullMode = CullMode.NONE;
+
+    /** Threshold used to find rows in which no block can be carved, including some leeway for rounding error */
+    private double cullThreshold;
+
+    /** Number of blocks above a carvable block whose values may be adjusted towards it before being tested */
+    private int cullReach;
+
+    /**
+     * Whether or not generators after the first are only evaluated in rows where a block could still be carved.
+     * Only possible when every noise value must pass the threshold.
+     */
+    private boolean isLazy = false;
+
+    /** Per-thread scratch arrays used while generating a single column */
+    private final ThreadLocal<ColumnScratch> columnScratchPool = ThreadLocal.withInitial(ColumnScratch::new);
 
     /**
      * @param isFastNoise true if FastNoise, false if OpenSimplex2S
@@ -38,120 +79,445 @@ public class NoiseGen {
      *                      values in each resultant noise tuple. Increasing this will impact performance.
      * @param yComp y-compression factor
      * @param xzComp xz-compression factor
+     * @param ySampleInterval Vertical distance between sampled noise values. Values less than 1 are treated as 1.
      */
     public NoiseGen(long seed, boolean isFastNoise, NoiseSettings noiseSettings,
-                    int numGenerators, float yComp, float xzComp) {
+                    int numGenerators, float yComp, float xzComp, int ySampleInterval) {
         this.seed = seed;
         this.noiseSettings = noiseSettings;
         this.numGenerators = numGenerators;
         this.yCompression = yComp;
         this.xzCompression = xzComp;
+        this.ySampleInterval = Math.max(1, ySampleInterval);
+        this.yStartCoeffs = new float[this.ySampleInterval];
+        this.yEndCoeffs = new float[this.ySampleInterval];
+        for (int n = 0; n < this.ySampleInterval; n++) {
+            yStartCoeffs[n] = (float) (this.ySampleInterval - n) / this.ySampleInterval;
+            yEndCoeffs[n] = (float) n / this.ySampleInterval;
+        }
+        this.cubePool = ThreadLocal.withInitial(() -> new NoiseCube(numGenerators));
+        this.latticePool = ThreadLocal.withInitial(() -> new NoiseLattice(numGenerators, this.ySampleInterval));
         initializeNoiseGens(isFastNoise);
     }
 
     /**
-     * Generate noise tuples for a column of blocks.
+     * Generate noise tuples for a column of blocks, writing them into a flat array.
+     * The tuple for y-coordinate y is written starting at {@code out[offset + (y - minHeight) * numGenerators]}.
+     *
+     * If the vertical sample interval is greater than 1, noise is only sampled at y-coordinates that are multiples
+     * of the interval, and the values in between are linearly interpolated. Since samples are aligned to world
+     * coordinates, a given block always gets the same value regardless of the range of the column being generated.
      * @param x The global x-coordinate of this column
      * @param z The global z-coordinate of this column
      * @param minHeight The bottom y-coordinate to start generating noise values for
      * @param maxHeight The top y-coordinate to stop generating noise values for
+     * @param out The array to write noise values to
+     * @param offset Index in out at which to write the first value
      */
-    public double[][] generateNoiseColumn(int x, int z, int minHeight, int maxHeight) {
-        double[][] noiseColumn = new double[maxHeight - minHeight + 1][numGenerators];
+    public void generateNoiseColumn(int x, int z, int minHeight, int maxHeight, double[] out, int offset) {
+        generateNoiseColumn(x, z, minHeight, maxHeight, numGenerators, out, offset);
+    }
 
-        for (int y = minHeight; y <= maxHeight; y++) {
+    /**
+     * Generate noise tuples for a column of blocks, only calculating the values of the first few generators.
+     * The rest of each tuple is left untouched.
+     * @param generatorCount Number of generators to calculate values for, starting from the first
+     * @see #generateNoiseColumn(int, int, int, int, double[], int)
+     */
+    private void generateNoiseColumn(int x, int z, int minHeight, int maxHeight, int generatorCount, double[] out, int offset) {
+        float xComp = x * xzCompression;
+        float zComp = z * xzCompression;
 
-            double[] noiseVals = new double[numGenerators];
-            for (int i = 0; i < numGenerators; i++) {
-                noiseVals[i] = listNoiseGens.get(i).GetNoise(x * xzCompression, y * yCompression, z * xzCompression);
-            }
-            noiseColumn[y - minHeight] = noiseVals;
+        // Sample every block
+        if (ySampleInterval == 1) {
+            int count = maxHeight - minHeight + 1;
+            float[] ys = getCompressedYs(minHeight, 1, count);
+            NoiseKernel.sampleTuples(noiseGens, generatorCount, xComp, zComp, ys, count, out, offset);
+            return;
         }
 
-        return noiseColumn;
+        // Sample every ySampleInterval blocks, enclosing the column
+        int sampleBottom = Math.floorDiv(minHeight, ySampleInterval);
+        int sampleTop = Math.floorDiv(maxHeight + ySampleInterval - 1, ySampleInterval);
+        int count = sampleTop - sampleBottom + 1;
+        float[] ys = getCompressedYs(sampleBottom * ySampleInterval, ySampleInterval, count);
+        double[] samples = getSampleScratch(count * numGenerators);
+        NoiseKernel.sampleTuples(noiseGens, generatorCount, xComp, zComp, ys, count, samples, 0);
+
+        // Interpolate between samples
+        for (int y = minHeight; y <= maxHeight; y++) {
+            interpolateSamples(samples, 0, sampleBottom, y, 0, generatorCount, out, offset + (y - minHeight) * numGenerators);
+        }
     }
 
     /**
-     * Generate noise tuples for a cube of blocks.
-     * Only columns of blocks at the four corners of each cube have noise values calculated for them.
-     * Blocks in between have noise values estimated via a naive implementation of trilinear interpolation.
-     * @param startPos Position of any block in the starting corner column of the cube.
-     *                 This column must have x and z coordinates lower than that of endPos.
-     * @param endPos   Position of any block in the ending corner column of the cube.
-     *                 This column must have x and z coordinates higher than that of startPos.
+     * Prepares this thread's noise lattice for a chunk. Node columns are calculated lazily as sub-chunks need them.
+     *
+     * The returned lattice belongs to this NoiseGen and the calling thread, and is reused by subsequent calls
+     * from the same thread. It must not be held on to once the caller is done with the current chunk.
+     * @param chunkX The chunk's x-coordinate
+     * @param chunkZ The chunk's z-coordinate
      * @param minHeight The bottom y-coordinate to start generating noise values for
      * @param maxHeight The top y-coordinate to stop generating noise values for
      */
-    public double[][][][] interpolateNoiseCube(BlockPos startPos, BlockPos endPos, int minHeight, int maxHeight) {
-        float startCoeff, endCoeff;
-        int startX       = startPos.getX();
-        int endX         = endPos.getX();
-        int startZ       = startPos.getZ();
-        int endZ         = endPos.getZ();
-        int subChunkSize = endX - startX + 1;
-
-        // Calculate noise tuples for four corner columns
-        double[][] noisesX0Z0 =
-            generateNoiseColumn(startX, startZ, minHeight, maxHeight);
-        double[][] noisesX0Z1 =
-            generateNoiseColumn(startX, endZ, minHeight, maxHeight);
-        double[][] noisesX1Z0 =
-            generateNoiseColumn(endX, startZ, minHeight, maxHeight);
-        double[][] noisesX1Z1 =
-            generateNoiseColumn(endX, endZ, minHeight, maxHeight);
-
-        // Initialize cube with 4 corner columns
-        double[][][][] cube = new double[subChunkSize][subChunkSize][maxHeight - minHeight + 1][numGenerators]; // [x len][z len][y len][num gens (usually 2)]
-        cube[0][0] = noisesX0Z0;
-        cube[0][subChunkSize - 1] = noisesX0Z1;
-        cube[subChunkSize - 1][0] = noisesX1Z0;
-        cube[subChunkSize - 1][subChunkSize - 1] = noisesX1Z1;
-
-        // Populate edge planes along x axis
-        for (int x = 1; x < subChunkSize - 1; x++) {
-            startCoeff = BCSettings.START_COEFFS[x];
-            endCoeff = BCSettings.END_COEFFS[x];
-
-            for (int y = minHeight; y <= maxHeight; y++) {
-                for (int i = 0; i < numGenerators; i++) {
-                    cube[x][0][y - minHeight][i] = (cube[0][0][y - minHeight][i] * startCoeff) + (cube[subChunkSize - 1][0][y - minHeight][i] * endCoeff);
+    public NoiseLattice getNoiseLattice(int chunkX, int chunkZ, int minHeight, int maxHeight) {
+        NoiseLattice lattice = latticePool.get();
+        lattice.reset(chunkX, chunkZ, minHeight, maxHeight, isLazy);
+        return lattice;
+    }
+
+    /**
+     * Generate noise tuples for a sub-chunk's cube of blocks.
+     * Only the lattice columns at the four corners of the sub-chunk have noise values calculated for them, and these
+     * are shared with neighboring sub-chunks in the same chunk.
+     * Blocks in between have noise values estimated via bilinear interpolation.
+     * Rows in which no block can be carved are skipped and marked inactive in the cube, if culling is enabled.
+     *
+     * The returned cube belongs to this NoiseGen and the calling thread, and is reused by subsequent calls
+     * from the same thread. It must not be held on to once the caller is done with the current sub-chunk.
+     * @param lattice This chunk's noise lattice, as given by {@link #getNoiseLattice}
+     * @param subX The sub-chunk's x-index within the chunk
+     * @param subZ The sub-chunk's z-index within the chunk
+     */
+    public NoiseCube interpolateNoiseCube(NoiseLattice lattice, int subX, int subZ) {
+        NoiseCube cube = cubePool.get();
+        cube.resize(BCSettings.SUB_CHUNK_SIZE, BCSettings.SUB_CHUNK_SIZE, lattice.getMaxHeight() - lattice.getMinHeight() + 1);
+
+        // Noise tuples for the four corner columns
+        double[] nodes = lattice.getNodes().getValues();
+        int x0z0 = getLatticeColumn(lattice, subX, subZ);
+        int x0z1 = getLatticeColumn(lattice, subX, subZ + 1);
+        int x1z0 = getLatticeColumn(lattice, subX + 1, subZ);
+        int x1z1 = getLatticeColumn(lattice, subX + 1, subZ + 1);
+
+        // Find rows in which some block may be carved. With lazy evaluation, only the first generator is known so far.
+        int height = cube.getHeight();
+        boolean[] activeRows = cube.getActiveRows();
+        boolean anyActive = classifyRows(nodes, x0z0, x0z1, x1z0, x1z1, height, isLazy ? 1 : numGenerators, activeRows);
+        if (!anyActive) {
+            return cube;
+        }
+        if (isLazy) {
+            calculateRemainingGenerators(lattice, subX, subZ, activeRows);
+            calculateRemainingGenerators(lattice, subX, subZ + 1, activeRows);
+            calculateRemainingGenerators(lattice, subX + 1, subZ, activeRows);
+            calculateRemainingGenerators(lattice, subX + 1, subZ + 1, activeRows);
+        }
+
+        interpolateColumns(cube, nodes, x0z0, x0z1, x1z0, x1z1);
+
+        return cube;
+    }
+
+    /**
+     * Sets the cache used to share lattice columns between chunks.
+     * Should be called before any noise is generated, since it is not synchronized with worldgen threads.
+     * @param columnCache The cache to use, or null to disable caching
+     */
+    public void setColumnCache(NoiseColumnCache columnCache) {
+        this.columnCache = columnCache;
+        if (columnCache != null) {
+            this.columnCacheId = columnCache.newCarverId();
+        }
+    }
+
+    /**
+     * For carvers that only carve blocks whose every noise value reaches a threshold.
+     * Interpolated values are convex combinations of the corner values, so rows of a sub-chunk in which no corner
+     * reaches the threshold can't have any blocks carved. These rows are left uninterpolated and marked inactive
+     * in the cube - see {@link NoiseCube#isRowActive}.
+     *
+     * This also enables lazy evaluation: generators after the first are only evaluated in rows in which the first
+     * generator's corner values could still let a block pass.
+     * Must be called before any noise is generated.
+     * @param minThreshold Lowest threshold any block may be compared against
+     * @param reach Number of blocks above each block whose noise values may be adjusted towards its own before
+     *              the threshold test, e.g. by y-adjustment
+     */
+    public void cullCellsBelowThreshold(float minThreshold, int reach) {
+        this.cullMode = CullMode.ALL_AT_LEAST;
+        // Leave some leeway for rounding error in interpolation
+        this.cullThreshold = minThreshold - 1e-5;
+        this.cullReach = reach;
+        this.isLazy = numGenerators > 1;
+    }
+
+    /**
+     * For carvers that only carve blocks whose noise values multiply to less than a threshold.
+     * Rows of a sub-chunk in which the corner values bound the product above the threshold can't have any blocks
+     * carved. These rows are left uninterpolated and marked inactive in the cube - see {@link NoiseCube#isRowActive}.
+     * Must be called before any noise is generated.
+     * @param maxThreshold Highest threshold any block may be compared against
+     */
+    public void cullCellsAboveProductThreshold(float maxThreshold) {
+        this.cullMode = CullMode.PRODUCT_BELOW;
+        // Leave some leeway for rounding error in interpolation
+        this.cullThreshold = maxThreshold + 1e-5;
+        this.cullReach = 0;
+    }
+
+    /* ------------------------- Public Getters -------------------------*/
+    public long getSeed() {
+        return seed;
+    }
+
+    public int getNumGenerators() {
+        return numGenerators;
+    }
+
+    public int getySampleInterval() {
+        return ySampleInterval;
+    }
+
+    /* ------------------------- Private Methods -------------------------*/
+    /**
+     * @return index of a lattice node's column within the lattice's backing array, calculating it first if needed
+     */
+    private int getLatticeColumn(NoiseLattice lattice, int nodeX, int nodeZ) {
+        NoiseCube nodes = lattice.getNodes();
+        int columnIndex = nodes.getColumnIndex(nodeX, nodeZ);
+        if (!lattice.isNodeCalculated(nodeX, nodeZ)) {
+            int x = lattice.getOriginX() + nodeX * BCSettings.SUB_CHUNK_SIZE;
+            int z = lattice.getOriginZ() + nodeZ * BCSettings.SUB_CHUNK_SIZE;
+            double[] values = nodes.getValues();
+
+            // With lazy evaluation, only the first generator's values are calculated (and cached) up front
+            int generatorCount = isLazy ? 1 : numGenerators;
+            int length = isLazy ? nodes.getHeight() : nodes.getColumnStride();
+            int stride = isLazy ? numGenerators : 1;
+
+            // Columns along chunk borders are shared with neighboring chunks, so check the cache first.
+            // Interior columns are never read by another chunk, so they bypass the cache.
+            int lastNode = NoiseLattice.NODES_PER_AXIS - 1;
+            boolean isShared = columnCache != null
+                && (nodeX == 0 || nodeX == lastNode || nodeZ == 0 || nodeZ == lastNode);
+            if (!isShared || !columnCache.get(columnCacheId, x, z, values, columnIndex, length, stride)) {
+                generateNoiseColumn(x, z, lattice.getMinHeight(), lattice.getMaxHeight(), generatorCount, values, columnIndex);
+                if (isShared) {
+                    columnCache.put(columnCacheId, x, z, values, columnIndex, length, stride);
                 }
             }
+            lattice.setNodeCalculated(nodeX, nodeZ);
+        }
+        return columnIndex;
+    }
 
-            for (int y = minHeight; y <= maxHeight; y++) {
-                for (int i = 0; i < numGenerators; i++) {
-                    cube[x][subChunkSize - 1][y - minHeight][i] = (cube[0][subChunkSize - 1][y - minHeight][i] * startCoeff) + (cube[subChunkSize - 1][subChunkSize - 1][y - minHeight][i] * endCoeff);
+    /**
+     * Finds the rows of a sub-chunk in which some block may be carved, based on its four corner columns.
+     * Interpolated values lie between the corner values, so a block can only be carved if the corner values allow
+     * it, either in the block's own row or in one of the rows below whose values it may be adjusted towards.
+     * @param knownGenerators Number of generators whose corner values have been calculated, starting from the first
+     * @param activeRows Array to write whether or not each row may have blocks carved to
+     * @return true if any row may have blocks carved, false otherwise
+     */
+    private boolean classifyRows(double[] nodes, int x0z0, int x0z1, int x1z0, int x1z1, int height,
+                                 int knownGenerators, boolean[] activeRows) {
+        if (cullMode == CullMode.NONE) {
+            Arrays.fill(activeRows, 0, height, true);
+            return height > 0;
+        }
+
+        boolean anyActive = false;
+        int lastCarvableRow = -cullReach - 1;
+        for (int row = 0; row < height; row++) {
+            int offset = row * numGenerators;
+            boolean isCarvable = true;
+            if (cullMode == CullMode.ALL_AT_LEAST) {
+                // Every value must reach the threshold
+                for (int i = offset; i < offset + knownGenerators; i++) {
+                    double max = Math.max(Math.max(nodes[x0z0 + i], nodes[x0z1 + i]), Math.max(nodes[x1z0 + i], nodes[x1z1 + i]));
+                    if (max < cullThreshold) {
+                        isCarvable = false;
+                        break;
+                    }
                 }
             }
+            else {
+                // Product of the values must fall below the threshold
+                double productMin = 1, productMax = 1;
+                for (int i = offset; i < offset + numGenerators; i++) {
+                    double min = Math.min(Math.min(nodes[x0z0 + i], nodes[x0z1 + i]), Math.min(nodes[x1z0 + i], nodes[x1z1 + i]));
+                    double max = Math.max(Math.max(nodes[x0z0 + i], nodes[x0z1 + i]), Math.max(nodes[x1z0 + i], nodes[x1z1 + i]));
+                    double a = productMin * min, b = productMin * max, c = productMax * min, d = productMax * max;
+                    productMin = Math.min(Math.min(a, b), Math.min(c, d));
+                    productMax = Math.max(Math.max(a, b), Math.max(c, d));
+                }
+                isCarvable = productMin < cullThreshold;
+            }
+
+            if (isCarvable) {
+                lastCarvableRow = row;
+            }
+            activeRows[row] = row - lastCarvableRow <= cullReach;
+            anyActive |= activeRows[row];
         }
+        return anyActive;
+    }
+
+    /**
+     * Calculates the values of every generator but the first for the given rows of a single lattice column.
+     * Samples already calculated for this column are reused.
+     */
+    private void calculateRemainingGenerators(NoiseLattice lattice, int nodeX, int nodeZ, boolean[] neededRows) {
+        int columnIndex = lattice.getNodes().getColumnIndex(nodeX, nodeZ);
+        int minHeight = lattice.getMinHeight();
+        int height = lattice.getMaxHeight() - minHeight + 1;
+        int sampleBottom = lattice.getSampleBottom();
+        int sampleCount = lattice.getSampleCount();
+        NoiseCube samples = lattice.getSamples();
+        double[] sampleValues = samples.getValues();
+        int sampleColumnIndex = samples.getColumnIndex(nodeX, nodeZ);
+        ColumnScratch scratch = columnScratchPool.get();
+        boolean[] neededSamples = scratch.getNeededSamples(sampleCount);
 
-        // Populate rest of cube by interpolating the two edge planes
-        for (int x = 0; x < subChunkSize; x++) {
-            for (int z = 1; z < subChunkSize - 1; z++) {
-                startCoeff = BCSettings.START_COEFFS[z];
-                endCoeff = BCSettings.END_COEFFS[z];
+        // Find samples needed by these rows that haven't been calculated yet
+        for (int row = 0; row < height; row++) {
+            if (neededRows[row]) {
+                int y = minHeight + row;
+                int sampleRow = Math.floorDiv(y, ySampleInterval) - sampleBottom;
+                neededSamples[sampleRow] = true;
+                if (y - (sampleRow + sampleBottom) * ySampleInterval != 0) {
+                    neededSamples[sampleRow + 1] = true;
+                }
+            }
+        }
+
+        // Sample each run of missing rows in one batch
+        float xComp = (lattice.getOriginX() + nodeX * BCSettings.SUB_CHUNK_SIZE) * xzCompression;
+        float zComp = (lattice.getOriginZ() + nodeZ * BCSettings.SUB_CHUNK_SIZE) * xzCompression;
+        int runStart = -1;
+        for (int sampleRow = 0; sampleRow <= sampleCount; sampleRow++) {
+            boolean isMissing = sampleRow < sampleCount
+                && neededSamples[sampleRow]
+                && !lattice.isSampleCalculated(nodeX, nodeZ, sampleRow);
+            if (isMissing) {
+                lattice.setSampleCalculated(nodeX, nodeZ, sampleRow);
+                if (runStart == -1) {
+                    runStart = sampleRow;
+                }
+            }
+            else if (runStart != -1) {
+                int count = sampleRow - runStart;
+                float[] ys = getCompressedYs((sampleBottom + runStart) * ySampleInterval, ySampleInterval, count);
+                for (int i = 1; i < numGenerators; i++) {
+                    NoiseKernel.sampleColumn(noiseGens[i], xComp, zComp, ys, count, sampleValues,
+                        sampleColumnIndex + runStart * numGenerators + i, numGenerators);
+                }
+                runStart = -1;
+            }
+        }
+        Arrays.fill(neededSamples, 0, sampleCount, false);
+
+        // Interpolate the needed rows from the samples
+        double[] values = lattice.getNodes().getValues();
+        for (int row = 0; row < height; row++) {
+            if (neededRows[row]) {
+                interpolateSamples(sampleValues, sampleColumnIndex, sampleBottom, minHeight + row,
+                    1, numGenerators, values, columnIndex + row * numGenerators);
+            }
+        }
+    }
+
+    /**
+     * Bilinearly interpolates the active rows of every column in a sub-chunk cube from the cube's four corner columns.
+     */
+    private void interpolateColumns(NoiseCube cube, double[] nodes, int x0z0, int x0z1, int x1z0, int x1z1) {
+        double[] values = cube.getValues();
+        boolean[] activeRows = cube.getActiveRows();
+        int height = cube.getHeight();
+        for (int x = 0; x < cube.getSizeX(); x++) {
+            float startCoeffX = BCSettings.START_COEFFS[x];
+            float endCoeffX = BCSettings.END_COEFFS[x];
+            for (int z = 0; z < cube.getSizeZ(); z++) {
+                float startCoeffZ = BCSettings.START_COEFFS[z];
+                float endCoeffZ = BCSettings.END_COEFFS[z];
+                float c00 = startCoeffX * startCoeffZ;
+                float c01 = startCoeffX * endCoeffZ;
+                float c10 = endCoeffX * startCoeffZ;
+                float c11 = endCoeffX * endCoeffZ;
 
-                for (int y = minHeight; y <= maxHeight; y++) {
-                    for (int i = 0; i < numGenerators; i++) {
-                        cube[x][z][y - minHeight][i] = (cube[x][0][y - minHeight][i] * startCoeff) + (cube[x][subChunkSize - 1][y - minHeight][i] * endCoeff);
+                int xz = cube.getColumnIndex(x, z);
+                for (int row = 0; row < height; row++) {
+                    if (!activeRows[row]) {
+                        continue;
+                    }
+                    int offset = row * numGenerators;
+                    for (int i = offset; i < offset + numGenerators; i++) {
+                        values[xz + i] = (nodes[x0z0 + i] * c00) + (nodes[x0z1 + i] * c01)
+                                       + (nodes[x1z0 + i] * c10) + (nodes[x1z1 + i] * c11);
                     }
                 }
             }
         }
+    }
 
-        return cube;
+    /**
+     * Linearly interpolates a single noise tuple between the two samples enclosing it.
+     * @param samples Sampled noise tuples, one every ySampleInterval blocks
+     * @param samplesOffset Index in samples of the first sampled tuple
+     * @param sampleBottom Index of the first sampled tuple's row
+     * @param y The y-coordinate to interpolate the tuple for
+     * @param firstGenerator Index of the first generator to interpolate
+     * @param lastGenerator Index after the last generator to interpolate
+     * @param out The array to write the tuple to
+     * @param offset Index in out at which to write the tuple
+     */
+    private void interpolateSamples(double[] samples, int samplesOffset, int sampleBottom, int y,
+                                    int firstGenerator, int lastGenerator, double[] out, int offset) {
+        int cell = Math.floorDiv(y, ySampleInterval);
+        int yOffset = y - cell * ySampleInterval;
+        int below = samplesOffset + (cell - sampleBottom) * numGenerators;
+
+        // Blocks on a sample row don't need interpolating, and may not have a sample above them
+        if (yOffset == 0) {
+            for (int i = firstGenerator; i < lastGenerator; i++) {
+                out[offset + i] = samples[below + i];
+            }
+            return;
+        }
+
+        int above = below + numGenerators;
+        float startCoeff = yStartCoeffs[yOffset];
+        float endCoeff = yEndCoeffs[yOffset];
+        for (int i = firstGenerator; i < lastGenerator; i++) {
+            out[offset + i] = (samples[below + i] * startCoeff) + (samples[above + i] * endCoeff);
+        }
     }
 
-    /* ------------------------- Public Getters -------------------------*/
-    public long getSeed() {
-        return seed;
+    /**
+     * @return this thread's sample scratch array, grown to hold at least size values
+     */
+    private double[] getSampleScratch(int size) {
+        ColumnScratch scratch = columnScratchPool.get();
+        if (scratch.samples.length < size) {
+            scratch.samples = new double[size];
+        }
+        return scratch.samples;
+    }
+
+    /**
+     * Computes the compressed y-coordinates of evenly spaced points in a column into this thread's scratch array.
+     * The k-th coordinate is {@code (yStart + k * yInterval) * yCompression}.
+     */
+    private float[] getCompressedYs(int yStart, int yInterval, int count) {
+        ColumnScratch scratch = columnScratchPool.get();
+        if (scratch.ys.length < count) {
+            scratch.ys = new float[count];
+        }
+        float[] ys = scratch.ys;
+        int y = yStart;
+        for (int k = 0; k < count; k++) {
+            ys[k] = y * yCompression;
+            y += yInterval;
+        }
+        return ys;
     }
 
-    /* ------------------------- Private Methods -------------------------*/
     /**
      * Initialize fractal noise generators.
      */
     private void initializeNoiseGens(boolean isFastNoise) {
+        noiseGens = new INoiseLibrary[numGenerators];
         if (isFastNoise) {
             for (int i = 0; i < numGenerators; i++) {
                 FastNoise noiseGen = new FastNoise();
@@ -161,7 +527,7 @@ public class NoiseGen {
                 noiseGen.SetFractalOctaves(noiseSettings.getOctaves());
                 noiseGen.SetFractalGain(noiseSettings.getGain());
                 noiseGen.SetFrequency(noiseSettings.getFrequency());
-                listNoiseGens.add(noiseGen);
+                noiseGens[i] = noiseGen;
             }
         }
         else {
@@ -171,8 +537,34 @@ public class NoiseGen {
                 noiseGen.setOctaves(noiseSettings.getOctaves());
                 noiseGen.setFrequency(noiseSettings.getFrequency());
                 noiseGen.setLacunarity(2.0);
-                listNoiseGens.add(noiseGen);
+                noiseGens[i] = noiseGen;
+            }
+        }
+    }
+
+    /**
+     * Scratch arrays reused by every column a thread generates
+     */
+    private static class ColumnScratch {
+        private double[] samples = new double[0];
+        private float[] ys = new float[0];
+        private boolean[] neededSamples = new boolean[0];
+
+        /** Must be cleared by the caller after use */
+        private boolean[] getNeededSamples(int size) {
+            if (neededSamples.length < size) {
+                neededSamples = new boolean[size];
             }
+            return neededSamples;
         }
     }
+
+    private enum CullMode {
+        /** Rows are never culled */
+        NONE,
+        /** Blocks are carved if every noise value reaches the threshold */
+        ALL_AT_LEAST,
+        /** Blocks are carved if the product of the noise values is less than the threshold */
+        PRODUCT_BELOW
+    }
 }
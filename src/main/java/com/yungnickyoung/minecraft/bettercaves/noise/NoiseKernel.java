@@ -0,0 +1,54 @@
+package com.yungnickyoung.minecraft.bettercaves.noise;
+
+import com.yungnickyoung.minecraft.yungsapi.noise.INoiseLibrary;
+
+/**
+ * Batch sampling routines for noise generators.
+ * Sampling a whole run of points per call keeps a single generator hot in the inner loop, instead of
+ * alternating between generators for every point.
+ */
+public final class NoiseKernel {
+    private NoiseKernel() {}
+
+    /**
+     * Samples a set of noise generators at the same points along a vertical column, writing interleaved tuples.
+     * The value of generator i at the k-th point is written to {@code out[offset + k * noiseGens.length + i]}.
+     * Coordinates are shared by every generator, so they only need to be computed once per column.
+     * @param noiseGens The noise generators to sample, one per tuple value
+     * @param generatorCount Number of generators to sample, starting from the first. Remaining tuple values are left untouched.
+     * @param x The compressed x-coordinate of the column
+     * @param z The compressed z-coordinate of the column
+     * @param ys The compressed y-coordinate of each point
+     * @param count Number of points to sample
+     * @param out The array to write noise values to
+     * @param offset Index in out at which to write the first tuple
+     */
+    public static void sampleTuples(INoiseLibrary[] noiseGens, int generatorCount, float x, float z, float[] ys, int count,
+                                    double[] out, int offset) {
+        int numGenerators = noiseGens.length;
+        for (int i = 0; i < generatorCount; i++) {
+            sampleColumn(noiseGens[i], x, z, ys, count, out, offset + i, numGenerators);
+        }
+    }
+
+    /**
+     * Samples a single noise generator at a set of points along a vertical column.
+     * The value at the k-th point is written to {@code out[offset + k * stride]}.
+     * @param noise The noise generator to sample
+     * @param x The compressed x-coordinate of the column
+     * @param z The compressed z-coordinate of the column
+     * @param ys The compressed y-coordinate of each point
+     * @param count Number of points to sample
+     * @param out The array to write noise values to
+     * @param offset Index in out at which to write the first value
+     * @param stride Distance in out between consecutive values. Use the number of generators to interleave tuples.
+     */
+    public static void sampleColumn(INoiseLibrary noise, float x, float z, float[] ys, int count,
+                                    double[] out, int offset, int stride) {
+        int index = offset;
+        for (int k = 0; k < count; k++) {
+            out[index] = noise.GetNoise(x, ys[k], z);
+            index += stride;
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.yungnickyoung.minecraft.bettercaves.noise;
+
+import com.yungnickyoung.minecraft.bettercaves.config.BCSettings;
+
+import java.util.Arrays;
+
+/**
+ * Noise columns sampled at the corners of every sub-chunk in a chunk.
+ * Nodes are spaced {@link BCSettings#SUB_CHUNK_SIZE} blocks apart, starting at the chunk's origin and ending at the
+ * origin of the next chunk over, so adjacent sub-chunks share the nodes along their common edges.
+ *
+ * Node columns are only calculated the first time they are needed - see {@link NoiseGen#interpolateNoiseCube}.
+ * When lazy evaluation is enabled, only the first generator's values are calculated up front. The remaining
+ * generators are sampled a row at a time as sub-chunks need them, and are tracked separately.
+ */
+public class NoiseLattice {
+    /** Number of nodes along each horizontal axis */
+    public static final int NODES_PER_AXIS = 16 / BCSettings.SUB_CHUNK_SIZE + 1;
+
+    /** Number of values in each noise tuple */
+    private final int numGenerators;
+
+    /** Node columns. Node (nodeX, nodeZ) is stored as column (nodeX, nodeZ) of this cube. */
+    private final NoiseCube nodes;
+
+    /** Whether or not each node's column has been calculated yet */
+    private final boolean[] isNodeCalculated = new boolean[NODES_PER_AXIS * NODES_PER_AXIS];
+
+    /** Global x and z coordinates of node (0, 0) */
+    private int originX, originZ;
+
+    /** Vertical range of every node column */
+    private int minHeight, maxHeight;
+
+    /** Vertical distance between noise samples */
+    private final int ySampleInterval;
+
+    /** Index of the lowest sample row covering the vertical range, and number of sample rows */
+    private int sampleBottom, sampleCount;
+
+    /**
+     * Raw noise samples for each node, used for lazy evaluation of every generator except the first.
+     * Only created once the lattice is first reset for lazy evaluation, and null until then.
+     */
+    private NoiseCube samples;
+
+    /** Whether or not each node's sample rows have been calculated yet, for lazy evaluation */
+    private boolean[] isSampleCalculated = new boolean[0];
+
+    public NoiseLattice(int numGenerators, int ySampleInterval) {
+        this.numGenerators = numGenerators;
+        this.nodes = new NoiseCube(numGenerators);
+        this.ySampleInterval = ySampleInterval;
+    }
+
+    /**
+     * Prepares this lattice for a new chunk. All node columns are marked as not yet calculated.
+     * @param isLazy Whether or not the remaining generators will be evaluated lazily, in which case the lattice
+     *               also keeps track of raw samples
+     */
+    public void reset(int chunkX, int chunkZ, int minHeight, int maxHeight, boolean isLazy) {
+        this.originX = chunkX * 16;
+        this.originZ = chunkZ * 16;
+        this.minHeight = minHeight;
+        this.maxHeight = maxHeight;
+        this.nodes.resize(NODES_PER_AXIS, NODES_PER_AXIS, maxHeight - minHeight + 1);
+        Arrays.fill(isNodeCalculated, false);
+
+        this.sampleBottom = Math.floorDiv(minHeight, ySampleInterval);
+        this.sampleCount = Math.floorDiv(maxHeight + ySampleInterval - 1, ySampleInterval) - sampleBottom + 1;
+        if (isLazy) {
+            if (samples == null) {
+                samples = new NoiseCube(numGenerators);
+            }
+            samples.resize(NODES_PER_AXIS, NODES_PER_AXIS, sampleCount);
+            int size = NODES_PER_AXIS * NODES_PER_AXIS * sampleCount;
+            if (isSampleCalculated.length < size) {
+                isSampleCalculated = new boolean[size];
+            }
+            Arrays.fill(isSampleCalculated, 0, size, false);
+        }
+    }
+
+    public boolean isNodeCalculated(int nodeX, int nodeZ) {
+        return isNodeCalculated[nodeX * NODES_PER_AXIS + nodeZ];
+    }
+
+    public void setNodeCalculated(int nodeX, int nodeZ) {
+        isNodeCalculated[nodeX * NODES_PER_AXIS + nodeZ] = true;
+    }
+
+    public boolean isSampleCalculated(int nodeX, int nodeZ, int sampleRow) {
+        return isSampleCalculated[(nodeX * NODES_PER_AXIS + nodeZ) * sampleCount + sampleRow];
+    }
+
+    public void setSampleCalculated(int nodeX, int nodeZ, int sampleRow) {
+        isSampleCalculated[(nodeX * NODES_PER_AXIS + nodeZ) * sampleCount + sampleRow] = true;
+    }
+
+    public NoiseCube getNodes() {
+        return nodes;
+    }
+
+    public int getOriginX() {
+        return originX;
+    }
+
+    public int getOriginZ() {
+        return originZ;
+    }
+
+    public int getMinHeight() {
+        return minHeight;
+    }
+
+    public int getMaxHeight() {
+        return maxHeight;
+    }
+
+    public NoiseCube getSamples() {
+        return samples;
+    }
+
+    public int getSampleBottom() {
+        return sampleBottom;
+    }
+
+    public int getSampleCount() {
+        return sampleCount;
+    }
+}
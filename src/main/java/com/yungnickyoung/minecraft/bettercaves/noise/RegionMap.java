@@ -0,0 +1,235 @@
+package com.yungnickyoung.minecraft.bettercaves.noise;
+
+import com.yungnickyoung.minecraft.bettercaves.config.BCSettings;
+import com.yungnickyoung.minecraft.yungsapi.noise.FastNoise;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Region noise for every column in a dimension, computed in square tiles and shared by all carver controllers.
+ * Region samplers are low-frequency 2D noise evaluated for every column of every chunk, so sampling them once
+ * per tile and looking the values up per column keeps noise evaluation out of the chunk carving loop.
+ *
+ * Each region sampler is registered as a layer. A tile holds the value of every layer for each of its columns.
+ * Tiles are immutable once computed, and the most recently used ones are kept in a bounded cache.
+ *
+ * Layers registered with a {@link Classifier} are sampled adaptively: only the corners of each sub-chunk are
+ * sampled at first, and if they all safely fall in the same class, the rest of the sub-chunk is interpolated
+ * from them instead of being sampled. Sub-chunks straddling a class boundary are sampled column by column.
+ */
+public class RegionMap {
+    /** Width of a tile, in columns. Must be a multiple of 16, so that every chunk lies within a single tile. */
+    public static final int TILE_SIZE = 64;
+
+    /** Maximum number of tiles kept in the cache. 64 tiles cover 1024 chunks. */
+    private static final int MAX_TILES = 64;
+
+    /** Number of sub-chunk corners along each axis of a tile */
+    private static final int NODES_PER_AXIS = TILE_SIZE / BCSettings.SUB_CHUNK_SIZE + 1;
+
+    /**
+     * Distance a sub-chunk corner's value must be from any class boundary for the sub-chunk to be interpolated.
+     * Leaves room for smooth noise to stray from the interpolated value between corners.
+     */
+    private static final float CORNER_MARGIN = .01f;
+
+    /** Sampler for each layer */
+    private final List<FastNoise> samplers = new ArrayList<>();
+
+    /** Classifier for each layer. Null for layers that are sampled for every column. */
+    private final List<Classifier> classifiers = new ArrayList<>();
+
+    /** Tiles in access order, least recently used first. All access must be synchronized on the map. */
+    private final Map<Long, Tile> tiles = new LinkedHashMap<Long, Tile>(MAX_TILES, .75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Tile> eldest) {
+            return size() > MAX_TILES;
+        }
+    };
+
+    /**
+     * Registers a region sampler with this map. Its values are sampled for every column.
+     * Must be called before any tiles are requested, since it is not synchronized with worldgen threads.
+     * @param sampler The sampler to register. It is only ever sampled at integer column coordinates.
+     * @return the layer id used to look up the sampler's values in a tile
+     */
+    public int addLayer(FastNoise sampler) {
+        return addLayer(sampler, null);
+    }
+
+    /**
+     * Registers a region sampler with this map, only sampling every column of sub-chunks whose corners don't
+     * agree on a class. Values interpolated for other sub-chunks are only guaranteed to be in the same class as
+     * the corners, so users of the layer must treat all values in a class the same way.
+     *
+     * This assumes the noise doesn't leave the corners' class anywhere inside a sub-chunk whose corners agree,
+     * which only holds for smooth noise. Piecewise-constant samplers such as cellular noise must be registered
+     * with {@link #addLayer(FastNoise)} instead.
+     * Must be called before any tiles are requested, since it is not synchronized with worldgen threads.
+     * @param sampler The sampler to register. It is only ever sampled at integer column coordinates.
+     * @param classifier Classifier for the sampler's values, or null to sample every column
+     * @return the layer id used to look up the sampler's values in a tile
+     */
+    public int addLayer(FastNoise sampler, Classifier classifier) {
+        samplers.add(sampler);
+        classifiers.add(classifier);
+        return samplers.size() - 1;
+    }
+
+    /**
+     * @return the tile containing the given chunk, computing it first if needed
+     */
+    public Tile getTile(int chunkX, int chunkZ) {
+        int tileX = Math.floorDiv(chunkX * 16, TILE_SIZE);
+        int tileZ = Math.floorDiv(chunkZ * 16, TILE_SIZE);
+        long key = ((long) tileX << 32) | (tileZ & 0xFFFFFFFFL);
+
+        Tile tile;
+        synchronized (tiles) {
+            tile = tiles.get(key);
+        }
+        if (tile == null) {
+            // Computed outside the lock so other threads aren't held up. Two threads may occasionally compute
+            // the same tile at once, in which case both get identical values.
+            tile = new Tile(tileX * TILE_SIZE, tileZ * TILE_SIZE);
+            synchronized (tiles) {
+                tiles.put(key, tile);
+            }
+        }
+        return tile;
+    }
+
+    /**
+     * Groups a region sampler's values into classes, where the user of the values treats every value within a
+     * class the same way - for example, the range of noise values assigned to a single carver.
+     * Each class must cover a single interval of values.
+     */
+    public interface Classifier {
+        /** Class for values that are not treated uniformly, and so can't be interpolated */
+        int MIXED = -1;
+
+        /**
+         * @return the class of the given value, or {@link #MIXED} if values near it may be treated differently
+         */
+        int classify(float value);
+    }
+
+    /**
+     * Region noise values for a square of columns.
+     */
+    public class Tile {
+        /** Global coordinates of the tile's first column */
+        private final int originX, originZ;
+
+        /** Noise values for each layer, stored row by row along the z-axis */
+        private final float[][] values;
+
+        private Tile(int originX, int originZ) {
+            this.originX = originX;
+            this.originZ = originZ;
+            this.values = new float[samplers.size()][TILE_SIZE * TILE_SIZE];
+            for (int layer = 0; layer < samplers.size(); layer++) {
+                if (classifiers.get(layer) == null) {
+                    sampleLayer(samplers.get(layer), values[layer]);
+                }
+                else {
+                    sampleLayerAdaptively(samplers.get(layer), classifiers.get(layer), values[layer]);
+                }
+            }
+        }
+
+        /**
+         * @param layer The layer id, as given by {@link #addLayer}
+         * @param x The global x-coordinate of the column. Must lie within this tile.
+         * @param z The global z-coordinate of the column. Must lie within this tile.
+         * @return the layer's noise value for the given column
+         */
+        public float getValue(int layer, int x, int z) {
+            return values[layer][(x - originX) * TILE_SIZE + (z - originZ)];
+        }
+
+        /**
+         * Samples a layer's value for every column in this tile.
+         */
+        private void sampleLayer(FastNoise sampler, float[] layerValues) {
+            for (int x = 0; x < TILE_SIZE; x++) {
+                for (int z = 0; z < TILE_SIZE; z++) {
+                    layerValues[x * TILE_SIZE + z] = sampler.GetNoise(originX + x, originZ + z);
+                }
+            }
+        }
+
+        /**
+         * Samples a layer's value at the corners of every sub-chunk in this tile, interpolating the rest of each
+         * sub-chunk if its corners agree and sampling every column of it otherwise.
+         */
+        private void sampleLayerAdaptively(FastNoise sampler, Classifier classifier, float[] layerValues) {
+            int subChunkSize = BCSettings.SUB_CHUNK_SIZE;
+
+            // Sample every sub-chunk corner, and find the class each one safely falls in
+            float[] nodes = new float[NODES_PER_AXIS * NODES_PER_AXIS];
+            int[] nodeClasses = new int[NODES_PER_AXIS * NODES_PER_AXIS];
+            for (int nodeX = 0; nodeX < NODES_PER_AXIS; nodeX++) {
+                for (int nodeZ = 0; nodeZ < NODES_PER_AXIS; nodeZ++) {
+                    int node = nodeX * NODES_PER_AXIS + nodeZ;
+                    nodes[node] = sampler.GetNoise(originX + nodeX * subChunkSize, originZ + nodeZ * subChunkSize);
+                    nodeClasses[node] = classifyWithMargin(classifier, nodes[node]);
+                }
+            }
+
+            for (int subX = 0; subX < NODES_PER_AXIS - 1; subX++) {
+                for (int subZ = 0; subZ < NODES_PER_AXIS - 1; subZ++) {
+                    int x0z0 = subX * NODES_PER_AXIS + subZ;
+                    int x0z1 = x0z0 + 1;
+                    int x1z0 = x0z0 + NODES_PER_AXIS;
+                    int x1z1 = x1z0 + 1;
+                    int nodeClass = nodeClasses[x0z0];
+                    boolean isUniform = nodeClass != Classifier.MIXED
+                        && nodeClasses[x0z1] == nodeClass
+                        && nodeClasses[x1z0] == nodeClass
+                        && nodeClasses[x1z1] == nodeClass;
+
+                    for (int offsetX = 0; offsetX < subChunkSize; offsetX++) {
+                        for (int offsetZ = 0; offsetZ < subChunkSize; offsetZ++) {
+                            int x = subX * subChunkSize + offsetX;
+                            int z = subZ * subChunkSize + offsetZ;
+                            if (isUniform) {
+                                // Interpolated values lie between the corner values, so they share their class
+                                float startCoeffX = BCSettings.START_COEFFS[offsetX];
+                                float endCoeffX = BCSettings.END_COEFFS[offsetX];
+                                float startCoeffZ = BCSettings.START_COEFFS[offsetZ];
+                                float endCoeffZ = BCSettings.END_COEFFS[offsetZ];
+                                layerValues[x * TILE_SIZE + z] =
+                                    (nodes[x0z0] * startCoeffX * startCoeffZ) + (nodes[x0z1] * startCoeffX * endCoeffZ)
+                                  + (nodes[x1z0] * endCoeffX * startCoeffZ) + (nodes[x1z1] * endCoeffX * endCoeffZ);
+                            }
+                            else if (offsetX == 0 && offsetZ == 0) {
+                                layerValues[x * TILE_SIZE + z] = nodes[x0z0];
+                            }
+                            else {
+                                layerValues[x * TILE_SIZE + z] = sampler.GetNoise(originX + x, originZ + z);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+
+        /**
+         * @return the class of the given value, or {@link Classifier#MIXED} if it is within the corner margin
+         * of another class
+         */
+        private int classifyWithMargin(Classifier classifier, float value) {
+            int valueClass = classifier.classify(value);
+            if (valueClass == Classifier.MIXED
+                || classifier.classify(value - CORNER_MARGIN) != valueClass
+                || classifier.classify(value + CORNER_MARGIN) != valueClass) {
+                return Classifier.MIXED;
+            }
+            return valueClass;
+        }
+    }
+}
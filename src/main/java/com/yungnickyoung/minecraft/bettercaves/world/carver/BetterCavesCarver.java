@@ -84,7 +84,7 @@ public class BetterCavesCarver extends WorldCarver<EmptyCarverConfig> {
         MasterController masterController = BetterCaves.activeCarversMap.get(dimensionName);
         masterController.setWorld(world); // Ensure controller's world is up to date
 
-        return masterController.carveRegion(chunkIn, biomePos, chunkIn.getPos().x, chunkIn.getPos().z, airCarvingMask, liquidCarvingMask);
+        return masterController.carveRegion(chunkIn, chunkIn.getPos().x, chunkIn.getPos().z, airCarvingMask, liquidCarvingMask);
     }
 
     @Override
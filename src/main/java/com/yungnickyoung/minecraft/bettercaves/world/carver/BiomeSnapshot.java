@@ -0,0 +1,171 @@
+package com.yungnickyoung.minecraft.bettercaves.world.carver;
+
+import net.minecraft.block.BlockState;
+import net.minecraft.world.IWorld;
+import net.minecraft.world.biome.Biome;
+import net.minecraft.world.gen.surfacebuilders.ISurfaceBuilderConfig;
+
+/**
+ * Biome information for a chunk and the columns around it, resolved once before the chunk is carved.
+ * Carvers check biomes for every carved block and for the columns next to it, so resolving them up front keeps
+ * biome lookups out of the carving loops.
+ *
+ * Biomes are stored at the resolution of the world's biome data - one per 4x4 quart of columns - and are sampled
+ * at the bottom of the world. The snapshot extends one quart past each side of the chunk, so columns up to
+ * 4 blocks outside the chunk may be looked up as well.
+ * All coordinates are chunk-local, and are negative or above 15 for columns outside the chunk.
+ *
+ * The snapshot also holds the distance from each column in the chunk to the nearest ocean and non-ocean column,
+ * used to wall flooded caves off from normal ones. These are found with a distance transform over the whole chunk
+ * rather than by searching around every column.
+ */
+public class BiomeSnapshot {
+    /** Width of the border around the chunk, in quarts */
+    private static final int BORDER = 1;
+
+    /** Width of the snapshot, in quarts */
+    private static final int WIDTH = 4 + 2 * BORDER;
+
+    /** Furthest distance outside the chunk a column may be looked up at, in blocks */
+    public static final int MAX_DISTANCE = BORDER * 4;
+
+    /** Radius searched around each column for columns of the opposite ocean/non-ocean kind. Must not exceed MAX_DISTANCE. */
+    public static final int FLOOD_SEARCH_RADIUS = 2;
+
+    /** Distance used for columns with nothing of the searched kind in range */
+    private static final int FAR = 2 * FLOOD_SEARCH_RADIUS;
+
+    private final Biome.Category[] categories = new Biome.Category[WIDTH * WIDTH];
+    private final BlockState[] topBlocks = new BlockState[WIDTH * WIDTH];
+    private final BlockState[] fillerBlocks = new BlockState[WIDTH * WIDTH];
+
+    /** Whether or not each quart is in a chunk contained by the world the snapshot was taken from */
+    private final boolean[] inWorld = new boolean[WIDTH * WIDTH];
+
+    /**
+     * Distance from each column in the chunk to the nearest ocean and non-ocean column in the world, up to FAR.
+     * Distances are the sum of the x and z offsets, searching a square of the flood search radius.
+     */
+    private final int[] oceanDistances = new int[16 * 16];
+    private final int[] landDistances = new int[16 * 16];
+
+    public BiomeSnapshot(IWorld world, int chunkX, int chunkZ) {
+        for (int x = 0; x < WIDTH; x++) {
+            for (int z = 0; z < WIDTH; z++) {
+                int quartX = chunkX * 4 + x - BORDER;
+                int quartZ = chunkZ * 4 + z - BORDER;
+                int index = x * WIDTH + z;
+
+                Biome biome = world.getNoiseBiome(quartX, 0, quartZ);
+                ISurfaceBuilderConfig surfaceConfig = biome.getGenerationSettings().getSurfaceBuilderConfig();
+                categories[index] = biome.getCategory();
+                topBlocks[index] = surfaceConfig.getTop();
+                fillerBlocks[index] = surfaceConfig.getUnder();
+                inWorld[index] = world.chunkExists(quartX >> 2, quartZ >> 2);
+            }
+        }
+
+        calculateFloodDistances();
+    }
+
+    public Biome.Category getCategory(int localX, int localZ) {
+        return categories[getIndex(localX, localZ)];
+    }
+
+    public BlockState getTopBlock(int localX, int localZ) {
+        return topBlocks[getIndex(localX, localZ)];
+    }
+
+    public BlockState getFillerBlock(int localX, int localZ) {
+        return fillerBlocks[getIndex(localX, localZ)];
+    }
+
+    /**
+     * Equivalent to {@link com.yungnickyoung.minecraft.bettercaves.util.BetterCavesUtils#isPosInWorld} for the world
+     * this snapshot was taken from.
+     */
+    public boolean isInWorld(int localX, int localZ) {
+        return inWorld[getIndex(localX, localZ)];
+    }
+
+    /**
+     * Returns a linear amplifier (from 0 to 1, inclusive) indicating how far away the nearest column of the opposite
+     * ocean/non-ocean kind is, within the flood search radius. Used to close off flooded caves from non-flooded caves,
+     * preventing weird water walls.
+     * Equivalent to {@link com.yungnickyoung.minecraft.bettercaves.util.BetterCavesUtils#getDistFactor} with the
+     * flood search radius.
+     * @param flooded Whether to search for non-ocean columns, as for flooded caves, or for ocean columns
+     */
+    public float getFloodSmoothFactor(int localX, int localZ, boolean flooded) {
+        return (float) getFloodDistance(localX, localZ, flooded) / FAR;
+    }
+
+    /**
+     * @param flooded Whether to search for non-ocean columns, as for flooded caves, or for ocean columns
+     * @return true if a column of the searched kind is at or directly next to the given column,
+     * meaning it is part of the wall between flooded and normal caves
+     */
+    public boolean isFloodWall(int localX, int localZ, boolean flooded) {
+        return getFloodDistance(localX, localZ, flooded) <= 1;
+    }
+
+    private int getFloodDistance(int localX, int localZ, boolean flooded) {
+        int index = localX * 16 + localZ;
+        return flooded ? landDistances[index] : oceanDistances[index];
+    }
+
+    /**
+     * Finds the distance from every column in the chunk to the nearest ocean and non-ocean column.
+     * The search square is separable, so the nearest column is first found along each row, and then the row results
+     * are combined along each column - 2 * (2r + 1) probes per column instead of (2r + 1)^2.
+     */
+    private void calculateFloodDistances() {
+        int radius = FLOOD_SEARCH_RADIUS;
+        int rows = 16 + 2 * radius;
+
+        // Nearest distance along the x-axis, for each x in the chunk and each z in the chunk plus the search radius
+        int[] rowOceanDistances = new int[16 * rows];
+        int[] rowLandDistances = new int[16 * rows];
+        for (int x = 0; x < 16; x++) {
+            for (int row = 0; row < rows; row++) {
+                int z = row - radius;
+                int oceanDistance = FAR;
+                int landDistance = FAR;
+                for (int offsetX = -radius; offsetX <= radius; offsetX++) {
+                    int index = getIndex(x + offsetX, z);
+                    if (!inWorld[index]) {
+                        continue;
+                    }
+                    if (categories[index] == Biome.Category.OCEAN) {
+                        oceanDistance = Math.min(oceanDistance, Math.abs(offsetX));
+                    }
+                    else {
+                        landDistance = Math.min(landDistance, Math.abs(offsetX));
+                    }
+                }
+                rowOceanDistances[x * rows + row] = oceanDistance;
+                rowLandDistances[x * rows + row] = landDistance;
+            }
+        }
+
+        // Combine rows along the z-axis. Unlike getDistFactor, a column of the searched kind finds itself at
+        // a distance of 0. Such a column always has a neighbor of the same kind in its quart, so it is a wall either way.
+        for (int x = 0; x < 16; x++) {
+            for (int z = 0; z < 16; z++) {
+                int oceanDistance = FAR;
+                int landDistance = FAR;
+                for (int offsetZ = -radius; offsetZ <= radius; offsetZ++) {
+                    int row = z + offsetZ + radius;
+                    oceanDistance = Math.min(oceanDistance, rowOceanDistances[x * rows + row] + Math.abs(offsetZ));
+                    landDistance = Math.min(landDistance, rowLandDistances[x * rows + row] + Math.abs(offsetZ));
+                }
+                oceanDistances[x * 16 + z] = oceanDistance;
+                landDistances[x * 16 + z] = landDistance;
+            }
+        }
+    }
+
+    private static int getIndex(int localX, int localZ) {
+        return ((localX >> 2) + BORDER) * WIDTH + (localZ >> 2) + BORDER;
+    }
+}
@@ -0,0 +1,97 @@
+package com.yungnickyoung.minecraft.bettercaves.world.carver;
+
+import net.minecraft.block.Block;
+import net.minecraft.block.BlockState;
+import net.minecraft.block.Blocks;
+import net.minecraft.block.material.Material;
+
+/**
+ * Pre-computed carving properties of every block state, indexed by block state id.
+ * Carvers check whether a block may be replaced for every block they dig, so the material and block checks behind
+ * each property are done once per block state instead of once per carved block.
+ *
+ * The table is built the first time it is used, which is always during world generation, after the block registry
+ * has been frozen.
+ */
+public final class CarvabilityTable {
+    /** Block may be replaced by air, regardless of the block above it */
+    public static final int CARVABLE = 1;
+
+    /** Block may be replaced by liquid, unless the block above it is wood */
+    public static final int LIQUID_CARVABLE = 1 << 1;
+
+    /** Sand or gravel, which may only be replaced by air if there isn't water above it */
+    public static final int SAND_OR_GRAVEL = 1 << 2;
+
+    /** Wood, which blocks below it must not be replaced so as not to damage trees */
+    public static final int WOOD = 1 << 3;
+
+    /** Water */
+    public static final int WATER = 1 << 4;
+
+    private CarvabilityTable() {}
+
+    /**
+     * @return the carving property flags of the given block state
+     */
+    public static int getFlags(BlockState blockState) {
+        byte[] table = Holder.TABLE;
+        int id = Block.getStateId(blockState);
+        // States missing from the id map have an id of -1
+        return id >= 0 && id < table.length ? table[id] : calculateFlags(blockState);
+    }
+
+    /**
+     * @return true if the given block state has all of the given flags
+     */
+    public static boolean hasFlags(BlockState blockState, int flags) {
+        return (getFlags(blockState) & flags) == flags;
+    }
+
+    private static int calculateFlags(BlockState blockState) {
+        Block block = blockState.getBlock();
+        Material material = blockState.getMaterial();
+        int flags = 0;
+
+        if (material == Material.WOOD) {
+            flags |= WOOD;
+        }
+        if (material == Material.WATER) {
+            flags |= WATER;
+        }
+
+        // Avoid damaging trees and villages
+        if (material == Material.LEAVES || material == Material.WOOD || block == Blocks.FARMLAND || block == Blocks.GRASS_PATH) {
+            return flags;
+        }
+
+        // Accept stone-like blocks added from other mods, as well as the list of carvable blocks provided by vanilla
+        if (material == Material.ROCK || material == Material.CLAY || material == Material.EARTH || CarverUtils.carvableBlocks.contains(block)) {
+            flags |= CARVABLE;
+        }
+        else if (block == Blocks.SAND || block == Blocks.GRAVEL) {
+            flags |= SAND_OR_GRAVEL;
+        }
+
+        if (material == Material.ROCK || CarverUtils.liquidCarvableBlocks.contains(block)) {
+            flags |= LIQUID_CARVABLE;
+        }
+
+        return flags;
+    }
+
+    /**
+     * Holds the table, so that it is only built once the carvers first need it.
+     */
+    private static class Holder {
+        private static final byte[] TABLE = buildTable();
+
+        private static byte[] buildTable() {
+            byte[] table = new byte[Block.BLOCK_STATE_IDS.size()];
+            for (BlockState blockState : Block.BLOCK_STATE_IDS) {
+                table[Block.getStateId(blockState)] = (byte) calculateFlags(blockState);
+            }
+            return table;
+        }
+    }
+}
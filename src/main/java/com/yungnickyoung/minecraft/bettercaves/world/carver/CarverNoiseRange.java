@@ -1,11 +1,14 @@
 package com.yungnickyoung.minecraft.bettercaves.world.carver;
 
 import com.yungnickyoung.minecraft.bettercaves.noise.NoiseUtils;
+import com.yungnickyoung.minecraft.bettercaves.noise.RegionMap;
+
+import java.util.List;
 
 /**
- * Couples the bounds of a particular range of noise values with a NoiseCube and carver.
- * Having these pieces of information in one place is kind of bad practice, but proves to be very
- * convenient in the Carver Controllers.
+ * Couples the bounds of a particular range of noise values with a carver.
+ * Noise cubes are not stored here, since ranges are shared by all worldgen threads.
+ * The Carver Controllers keep track of each range's noise cube locally instead.
  *
  * The smooth cutoff variables are currently only used by the CavernCarverController, since
  * caves currently do not have boundary smoothing.
@@ -21,9 +24,6 @@ public class CarverNoiseRange {
     // The carver associated with this range of noises.
     private ICarver carver;
 
-    // The NoiseCube associated with this range of noises.
-    private double[][][][] noiseCube;
-
     // The degree of smoothing on cavern edges. For a given SMOOTH_PERCENT x, both the
     // bottom and top ends of the noise range are each smoothed by (x * 100) percent.
     private static final float SMOOTH_PERCENT = .3f;
@@ -35,7 +35,6 @@ public class CarverNoiseRange {
         this.smoothBottomCutoff = NoiseUtils.simplexNoiseOffsetByPercent(bottom, smoothRangePercent);
         this.smoothTopCutoff = NoiseUtils.simplexNoiseNegativeOffsetByPercent(top, smoothRangePercent);
         this.carver = carver;
-        this.noiseCube = null;
     }
 
     public boolean contains(float noiseValue) {
@@ -60,12 +59,29 @@ public class CarverNoiseRange {
         return carver;
     }
 
-    public double[][][][] getNoiseCube() {
-        return noiseCube;
-    }
-
-    public void setNoiseCube(double[][][][] noiseCube) {
-        this.noiseCube = noiseCube;
+    /**
+     * Classifies a region noise value for a {@link RegionMap}, such that all values in a class select the same
+     * carver (or none), and each class covers a single interval of values.
+     * Carver thresholds are scaled by {@link #getSmoothAmp} within a range's smoothing bands, so values there are
+     * never classified.
+     * @param ranges Non-overlapping noise ranges, in ascending order
+     * @param noiseValue The region noise value
+     * @return the value's class, or {@link RegionMap.Classifier#MIXED} if it lies within a smoothing band
+     */
+    public static int getRegionClass(List<CarverNoiseRange> ranges, float noiseValue) {
+        for (int i = 0; i < ranges.size(); i++) {
+            CarverNoiseRange range = ranges.get(i);
+            if (noiseValue < range.bottom) {
+                return 2 * i; // Gap before this range
+            }
+            if (noiseValue < range.top) {
+                if (noiseValue <= range.smoothBottomCutoff || noiseValue >= range.smoothTopCutoff) {
+                    return RegionMap.Classifier.MIXED;
+                }
+                return 2 * i + 1;
+            }
+        }
+        return 2 * ranges.size(); // Gap after the last range
     }
 
     @Override
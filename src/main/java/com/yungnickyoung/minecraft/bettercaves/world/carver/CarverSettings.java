@@ -17,6 +17,7 @@ public class CarverSettings {
     private float yCompression;   // Vertical cave gen compression
     private float xzCompression;  // Horizontal cave gen compression
     private float noiseThreshold; // Noise threshold for determining whether or not a block gets dug out
+    private int   ySampleInterval = 1; // Vertical distance between sampled noise values. Values in between are interpolated
 
     /* ------------------ Worldgen Params ------------------ */
     private int     liquidAltitude;
@@ -94,6 +95,14 @@ public class CarverSettings {
         this.noiseThreshold = noiseThreshold;
     }
 
+    public int getySampleInterval() {
+        return ySampleInterval;
+    }
+
+    public void setySampleInterval(int ySampleInterval) {
+        this.ySampleInterval = ySampleInterval;
+    }
+
     public int getLiquidAltitude() {
         return liquidAltitude;
     }
@@ -2,15 +2,11 @@ package com.yungnickyoung.minecraft.bettercaves.world.carver;
 
 
 import com.google.common.collect.ImmutableSet;
-import com.yungnickyoung.minecraft.bettercaves.util.BetterCavesUtils;
 import net.minecraft.block.Block;
 import net.minecraft.block.BlockState;
 import net.minecraft.block.Blocks;
-import net.minecraft.block.material.Material;
 import net.minecraft.util.Direction;
 import net.minecraft.util.math.BlockPos;
-import net.minecraft.world.biome.Biome;
-import net.minecraft.world.chunk.IChunk;
 
 import java.util.BitSet;
 import java.util.Random;
@@ -35,9 +31,13 @@ public class CarverUtils {
     private static final BlockState GRAVEL = Blocks.GRAVEL.getDefaultState();
     private static final BlockState ANDESITE = Blocks.ANDESITE.getDefaultState();
 
+    // Carvable blocks provided by vanilla. Read into the CarvabilityTable the first time carving happens.
     public static Set<Block> carvableBlocks = ImmutableSet.of(Blocks.STONE, Blocks.GRANITE, Blocks.DIORITE, Blocks.ANDESITE, Blocks.DIRT, Blocks.COARSE_DIRT, Blocks.PODZOL, Blocks.GRASS_BLOCK, Blocks.TERRACOTTA, Blocks.WHITE_TERRACOTTA, Blocks.ORANGE_TERRACOTTA, Blocks.MAGENTA_TERRACOTTA, Blocks.LIGHT_BLUE_TERRACOTTA, Blocks.YELLOW_TERRACOTTA, Blocks.LIME_TERRACOTTA, Blocks.PINK_TERRACOTTA, Blocks.GRAY_TERRACOTTA, Blocks.LIGHT_GRAY_TERRACOTTA, Blocks.CYAN_TERRACOTTA, Blocks.PURPLE_TERRACOTTA, Blocks.BLUE_TERRACOTTA, Blocks.BROWN_TERRACOTTA, Blocks.GREEN_TERRACOTTA, Blocks.RED_TERRACOTTA, Blocks.BLACK_TERRACOTTA, Blocks.SANDSTONE, Blocks.RED_SANDSTONE, Blocks.MYCELIUM, Blocks.SNOW, Blocks.PACKED_ICE);
     public static Set<Block> liquidCarvableBlocks = ImmutableSet.of(Blocks.STONE, Blocks.GRANITE, Blocks.DIORITE, Blocks.ANDESITE, Blocks.DIRT, Blocks.COARSE_DIRT, Blocks.PODZOL, Blocks.GRASS_BLOCK, Blocks.TERRACOTTA, Blocks.WHITE_TERRACOTTA, Blocks.ORANGE_TERRACOTTA, Blocks.MAGENTA_TERRACOTTA, Blocks.LIGHT_BLUE_TERRACOTTA, Blocks.YELLOW_TERRACOTTA, Blocks.LIME_TERRACOTTA, Blocks.PINK_TERRACOTTA, Blocks.GRAY_TERRACOTTA, Blocks.LIGHT_GRAY_TERRACOTTA, Blocks.CYAN_TERRACOTTA, Blocks.PURPLE_TERRACOTTA, Blocks.BLUE_TERRACOTTA, Blocks.BROWN_TERRACOTTA, Blocks.GREEN_TERRACOTTA, Blocks.RED_TERRACOTTA, Blocks.BLACK_TERRACOTTA, Blocks.SANDSTONE, Blocks.RED_SANDSTONE, Blocks.MYCELIUM, Blocks.SNOW, Blocks.SAND, Blocks.GRAVEL, Blocks.WATER, Blocks.LAVA, Blocks.OBSIDIAN, Blocks.AIR, Blocks.CAVE_AIR, Blocks.PACKED_ICE);
 
+    /** Per-thread position reused for flooded blocks */
+    private static final ThreadLocal<BlockPos.Mutable> MUTABLE_POS = ThreadLocal.withInitial(BlockPos.Mutable::new);
+
     private static final ImmutableSet<BlockState> DEBUG_BLOCKS = ImmutableSet.of(Blocks.GOLD_BLOCK.getDefaultState(), Blocks.OAK_PLANKS.getDefaultState(), Blocks.COBBLESTONE.getDefaultState(), Blocks.REDSTONE_BLOCK.getDefaultState(), Blocks.EMERALD_BLOCK.getDefaultState(), Blocks.BRICKS.getDefaultState());
 
     /**
@@ -46,95 +46,212 @@ public class CarverUtils {
      * If setting to air, it also checks to see if we've broken the surface, and if so,
      * tries to make the floor the biome's top block.
      *
-     * @param chunkIn          the chunk containing the block
-     * @param blockPos         The block's position - can be with real (absolute) or chunk-local coordinates
+     * @param writer           writer for the chunk containing the block
+     * @param biomes           biome snapshot of the chunk
+     * @param x                The block's x-coordinate - can be real (absolute) or chunk-local
+     * @param y                The block's y-coordinate
+     * @param z                The block's z-coordinate - can be real (absolute) or chunk-local
      * @param airBlockState    the BlockState to use for air.
      * @param liquidBlockState the BlockState to use for liquids. May be null if in buffer zone between liquid regions
      * @param liquidAltitude   altitude at and below which air is replaced with liquidBlockState
      * @param replaceGravel    if floating gravel should be replaced with andesite
      * @param carvingMask      BitSet that keeps track of which blocks have already been dug.
      */
-    public static void carveBlock(IChunk chunkIn, BlockPos blockPos, BlockState airBlockState, BlockState liquidBlockState, int liquidAltitude, boolean replaceGravel, BitSet carvingMask) {
+    public static void carveBlock(SectionWriter writer, BiomeSnapshot biomes, int x, int y, int z, BlockState airBlockState, BlockState liquidBlockState, int liquidAltitude, boolean replaceGravel, BitSet carvingMask) {
+        // Neighboring blocks are looked up by coordinates rather than through new BlockPos objects
+        int localX = x & 0xF;
+        int localZ = z & 0xF;
+
         // Mark block as processed - for use by features
-        int bitIndex = (blockPos.getX() & 0xF) | ((blockPos.getZ() & 0xF) << 4) | (blockPos.getY() << 8);
+        int bitIndex = localX | (localZ << 4) | (y << 8);
         carvingMask.set(bitIndex);
 
-        BlockPos blockPosAbove = blockPos.up();
-        BlockPos blockPosBelow = blockPos.down();
-
-        Biome biome = chunkIn.getBiomes().getNoiseBiome(blockPos.getX(), blockPos.getY(), blockPos.getZ());
-        BlockState biomeTopBlockState = biome.getGenerationSettings().getSurfaceBuilderConfig().getTop();
-        BlockState biomeFillerBlockState = biome.getGenerationSettings().getSurfaceBuilderConfig().getUnder();
-        BlockState blockState = chunkIn.getBlockState(blockPos);
-        BlockState blockStateAbove = chunkIn.getBlockState(blockPosAbove);
-        BlockState blockStateBelow = chunkIn.getBlockState(blockPosBelow);
+        BlockState biomeTopBlockState = biomes.getTopBlock(localX, localZ);
+        BlockState biomeFillerBlockState = biomes.getFillerBlock(localX, localZ);
+        BlockState blockState = writer.getBlockState(localX, y, localZ);
+        BlockState blockStateAbove = writer.getBlockState(localX, y + 1, localZ);
+        BlockState blockStateBelow = writer.getBlockState(localX, y - 1, localZ);
 
         // Only continue if the block is replaceable
         if (!canReplaceBlock(blockState, blockStateAbove) && blockState != biomeTopBlockState && blockState != biomeFillerBlockState) {
             return;
         }
 
-        if (airBlockState == CAVE_AIR && blockPos.getY() <= liquidAltitude) { // Replace any block below the liquid altitude with the liquid block passed in
+        if (airBlockState == CAVE_AIR && y <= liquidAltitude) { // Replace any block below the liquid altitude with the liquid block passed in
             if (liquidBlockState != null) {
-                chunkIn.setBlockState(blockPos, liquidBlockState, false);
+                writer.setBlockState(localX, y, localZ, liquidBlockState);
             }
         } else {
             // Check for adjacent water blocks to avoid breaking into lakes or oceans
-            if (airBlockState == CAVE_AIR && isWaterAdjacent(chunkIn, blockPos)) return;
+            if (airBlockState == CAVE_AIR && isWaterAdjacent(writer, blockStateAbove, localX, y, localZ)) return;
 
             // Adjust block below if block removed is biome top block
             if (blockState == biomeTopBlockState && canReplaceBlock(blockStateBelow, CAVE_AIR))
-                chunkIn.setBlockState(blockPosBelow, biomeTopBlockState, false);
+                writer.setBlockState(localX, y - 1, localZ, biomeTopBlockState);
 
             // If we caused floating sand to form, replace it with sandstone
             if (blockStateAbove == SAND)
-                chunkIn.setBlockState(blockPosAbove, SANDSTONE, false);
+                writer.setBlockState(localX, y + 1, localZ, SANDSTONE);
             else if (blockStateAbove == RED_SAND)
-                chunkIn.setBlockState(blockPosAbove, RED_SANDSTONE, false);
+                writer.setBlockState(localX, y + 1, localZ, RED_SANDSTONE);
 
             // Replace floating gravel with andesite, if enabled
             if (replaceGravel && blockStateAbove == GRAVEL)
-                chunkIn.setBlockState(blockPosAbove, ANDESITE, false);
+                writer.setBlockState(localX, y + 1, localZ, ANDESITE);
 
             // Replace this block with air, effectively "digging" it out
-            chunkIn.setBlockState(blockPos, airBlockState, false);
+            writer.setBlockState(localX, y, localZ, airBlockState);
         }
     }
 
-    public static void carveBlock(IChunk chunkIn, BlockPos blockPos, BlockState liquidBlockState, int liquidAltitude, boolean replaceGravel, BitSet carvingMask) {
-        carveBlock(chunkIn, blockPos, Blocks.CAVE_AIR.getDefaultState(), liquidBlockState, liquidAltitude, replaceGravel, carvingMask);
+    public static void carveBlock(SectionWriter writer, BiomeSnapshot biomes, BlockPos blockPos, BlockState airBlockState, BlockState liquidBlockState, int liquidAltitude, boolean replaceGravel, BitSet carvingMask) {
+        carveBlock(writer, biomes, blockPos.getX(), blockPos.getY(), blockPos.getZ(), airBlockState, liquidBlockState, liquidAltitude, replaceGravel, carvingMask);
+    }
+
+    public static void carveBlock(SectionWriter writer, BiomeSnapshot biomes, BlockPos blockPos, BlockState liquidBlockState, int liquidAltitude, boolean replaceGravel, BitSet carvingMask) {
+        carveBlock(writer, biomes, blockPos.getX(), blockPos.getY(), blockPos.getZ(), Blocks.CAVE_AIR.getDefaultState(), liquidBlockState, liquidAltitude, replaceGravel, carvingMask);
     }
 
-    public static void carveBlock(IChunk chunkIn, int x, int y, int z, BlockState liquidBlockState, int liquidAltitude, boolean replaceGravel, BitSet carvingMask) {
-        carveBlock(chunkIn, new BlockPos(x, y, z), Blocks.CAVE_AIR.getDefaultState(), liquidBlockState, liquidAltitude, replaceGravel, carvingMask);
+    public static void carveBlock(SectionWriter writer, BiomeSnapshot biomes, int x, int y, int z, BlockState liquidBlockState, int liquidAltitude, boolean replaceGravel, BitSet carvingMask) {
+        carveBlock(writer, biomes, x, y, z, Blocks.CAVE_AIR.getDefaultState(), liquidBlockState, liquidAltitude, replaceGravel, carvingMask);
+    }
+
+    /**
+     * Carves out the blocks marked in a column's dig mask, working through each contiguous span of marked blocks
+     * from top to bottom. Blocks at and below the liquid altitude are only carved if a liquid block is given.
+     *
+     * @param writer           writer for the chunk containing the column
+     * @param biomes           biome snapshot of the chunk
+     * @param rand             Random used to place magma and obsidian in flooded caves.
+     * @param localX           chunk-local x-coordinate of the column
+     * @param localZ           chunk-local z-coordinate of the column
+     * @param digMask          whether or not each block in the column should be dug out, indexed by y - bottomY
+     * @param bottomY          bottom y-coordinate of the column
+     * @param topY             top y-coordinate of the column
+     * @param liquidBlockState the BlockState to use for liquids. May be null if in air region.
+     * @param liquidAltitude   altitude at and below which air is replaced with liquidBlockState
+     * @param replaceGravel    if floating gravel should be replaced with andesite
+     * @param flooded          if the column is in a flooded cave
+     * @param carvingMask      BitSet that keeps track of which blocks have already been dug.
+     */
+    public static void carveColumn(SectionWriter writer, BiomeSnapshot biomes, Random rand, int localX, int localZ, boolean[] digMask, int bottomY, int topY, BlockState liquidBlockState, int liquidAltitude, boolean replaceGravel, boolean flooded, BitSet carvingMask) {
+        int minY = liquidBlockState == null ? Math.max(bottomY, liquidAltitude + 1) : bottomY;
+
+        int y = topY;
+        while (y >= minY) {
+            if (!digMask[y - bottomY]) {
+                y--;
+                continue;
+            }
+
+            // Find the bottom of the span starting at this block
+            int spanTopY = y;
+            while (y >= minY && digMask[y - bottomY]) {
+                y--;
+            }
+            int spanBottomY = y + 1;
+
+            if (flooded) {
+                BlockPos.Mutable localPos = MUTABLE_POS.get();
+                for (int spanY = spanTopY; spanY >= spanBottomY; spanY--) {
+                    carveFloodedBlock(writer, biomes, rand, localPos.setPos(localX, spanY, localZ), liquidBlockState, liquidAltitude, replaceGravel, carvingMask);
+                }
+            }
+            else {
+                carveSpan(writer, biomes, localX, localZ, spanBottomY, spanTopY, liquidBlockState, liquidAltitude, replaceGravel, carvingMask);
+            }
+        }
     }
 
-    public static void carveBlock(IChunk chunkIn, int x, int y, int z, BlockState airBlockState, BlockState liquidBlockState, int liquidAltitude, boolean replaceGravel, BitSet carvingMask) {
-        carveBlock(chunkIn, new BlockPos(x, y, z), airBlockState, liquidBlockState, liquidAltitude, replaceGravel, carvingMask);
+    /**
+     * Digs out a contiguous vertical span of blocks, from top to bottom.
+     * Equivalent to calling {@link #carveBlock} with cave air for each block in the span in turn, but keeps track of
+     * the blocks above and below the one being dug as it goes. Each block in the span is only read once, and the
+     * blocks above it are never read again, since they are either the block that was just dug out or were left as is.
+     *
+     * @param writer           writer for the chunk containing the span
+     * @param biomes           biome snapshot of the chunk
+     * @param localX           chunk-local x-coordinate of the span
+     * @param localZ           chunk-local z-coordinate of the span
+     * @param bottomY          y-coordinate of the bottom block in the span
+     * @param topY             y-coordinate of the top block in the span
+     * @param liquidBlockState the BlockState to use for liquids. May be null if in air region.
+     * @param liquidAltitude   altitude at and below which air is replaced with liquidBlockState
+     * @param replaceGravel    if floating gravel should be replaced with andesite
+     * @param carvingMask      BitSet that keeps track of which blocks have already been dug.
+     */
+    public static void carveSpan(SectionWriter writer, BiomeSnapshot biomes, int localX, int localZ, int bottomY, int topY, BlockState liquidBlockState, int liquidAltitude, boolean replaceGravel, BitSet carvingMask) {
+        BlockState biomeTopBlockState = biomes.getTopBlock(localX, localZ);
+        BlockState biomeFillerBlockState = biomes.getFillerBlock(localX, localZ);
+        BlockState blockStateAbove = writer.getBlockState(localX, topY + 1, localZ);
+        BlockState blockState = writer.getBlockState(localX, topY, localZ);
+
+        for (int y = topY; y >= bottomY; y--) {
+            // Mark block as processed - for use by features
+            carvingMask.set(localX | (localZ << 4) | (y << 8));
+
+            BlockState blockStateBelow = writer.getBlockState(localX, y - 1, localZ);
+
+            // What this block is once it has been dug, which is the block above the next one
+            BlockState newBlockState = blockState;
+
+            boolean isReplaceable = canReplaceBlock(blockState, blockStateAbove) || blockState == biomeTopBlockState || blockState == biomeFillerBlockState;
+            if (isReplaceable && y <= liquidAltitude) { // Replace any block below the liquid altitude with the liquid block passed in
+                if (liquidBlockState != null) {
+                    writer.setBlockState(localX, y, localZ, liquidBlockState);
+                    newBlockState = liquidBlockState;
+                }
+            }
+            else if (isReplaceable && !isWaterAdjacent(writer, blockStateAbove, localX, y, localZ)) {
+                // Adjust block below if block removed is biome top block
+                if (blockState == biomeTopBlockState && canReplaceBlock(blockStateBelow, CAVE_AIR)) {
+                    writer.setBlockState(localX, y - 1, localZ, biomeTopBlockState);
+                    blockStateBelow = biomeTopBlockState;
+                }
+
+                // If we caused floating sand to form, replace it with sandstone.
+                // Only possible at the top of the span, or below blocks that couldn't be dug out.
+                if (blockStateAbove == SAND)
+                    writer.setBlockState(localX, y + 1, localZ, SANDSTONE);
+                else if (blockStateAbove == RED_SAND)
+                    writer.setBlockState(localX, y + 1, localZ, RED_SANDSTONE);
+
+                // Replace floating gravel with andesite, if enabled
+                if (replaceGravel && blockStateAbove == GRAVEL)
+                    writer.setBlockState(localX, y + 1, localZ, ANDESITE);
+
+                // Replace this block with air, effectively "digging" it out
+                writer.setBlockState(localX, y, localZ, CAVE_AIR);
+                newBlockState = CAVE_AIR;
+            }
+
+            blockStateAbove = newBlockState;
+            blockState = blockStateBelow;
+        }
     }
 
     /**
      * Counterpart to carveBlock() for flooded caves.
      * Places magma and obsidian randomly 1 block above liquidAltitude.
      *
-     * @param chunkIn          the chunk containing the block
+     * @param writer           writer for the chunk containing the block
+     * @param biomes           biome snapshot of the chunk
      * @param rand             Random used to place magma and obsidian.
      * @param blockPos         The block's position - can be with real (absolute) or chunk-local coordinates
      * @param liquidBlockState the BlockState to use for liquids. May be null if in buffer zone between liquid regions
      * @param liquidAltitude   altitude at and below which air is replaced with liquidBlockState
      * @param carvingMask      BitSet that keeps track of which blocks have already been dug.
      */
-    public static void carveFloodedBlock(IChunk chunkIn, Random rand, BlockPos.Mutable blockPos, BlockState liquidBlockState, int liquidAltitude, boolean replaceGravel, BitSet carvingMask) {
+    public static void carveFloodedBlock(SectionWriter writer, BiomeSnapshot biomes, Random rand, BlockPos.Mutable blockPos, BlockState liquidBlockState, int liquidAltitude, boolean replaceGravel, BitSet carvingMask) {
         // Mark block as processed - for use by features
         int bitIndex = (blockPos.getX() & 0xF) | ((blockPos.getZ() & 0xF) << 4) | (blockPos.getY() << 8);
         carvingMask.set(bitIndex);
 
         // Dig flooded block
-        Biome biome = chunkIn.getBiomes().getNoiseBiome(blockPos.getX(), blockPos.getY(), blockPos.getZ());
-        BlockState biomeTopBlockState = biome.getGenerationSettings().getSurfaceBuilderConfig().getTop();
-        BlockState biomeFillerBlockState = biome.getGenerationSettings().getSurfaceBuilderConfig().getUnder();
-        BlockState blockState = chunkIn.getBlockState(blockPos);
-        BlockState blockStateAbove = chunkIn.getBlockState(blockPos.up());
+        BlockState biomeTopBlockState = biomes.getTopBlock(blockPos.getX() & 0xF, blockPos.getZ() & 0xF);
+        BlockState biomeFillerBlockState = biomes.getFillerBlock(blockPos.getX() & 0xF, blockPos.getZ() & 0xF);
+        BlockState blockState = writer.getBlockState(blockPos);
+        BlockState blockStateAbove = writer.getBlockState(blockPos.getX(), blockPos.getY() + 1, blockPos.getZ());
         if (!canReplaceLiquidBlock(blockState, blockStateAbove) && blockState != biomeTopBlockState && blockState != biomeFillerBlockState) {
             return;
         }
@@ -142,27 +259,34 @@ public class CarverUtils {
         if (liquidBlockState != null && liquidBlockState.getBlock() == Blocks.LAVA && blockPos.getY() == liquidAltitude + 1) { // Add magma and obsidian right above lava
             float f = rand.nextFloat();
             if (f < 0.25f) {
-                chunkIn.setBlockState(blockPos, Blocks.MAGMA_BLOCK.getDefaultState(), false);
-                chunkIn.getBlocksToBeTicked().scheduleTick(blockPos, Blocks.MAGMA_BLOCK, 0);
+                writer.setBlockState(blockPos, Blocks.MAGMA_BLOCK.getDefaultState());
+                writer.scheduleBlockTick(blockPos, Blocks.MAGMA_BLOCK);
             } else {
-                chunkIn.setBlockState(blockPos, Blocks.OBSIDIAN.getDefaultState(), false);
+                writer.setBlockState(blockPos, Blocks.OBSIDIAN.getDefaultState());
             }
         } else if (liquidBlockState != null && blockPos.getY() <= liquidAltitude) { // Replace any block below the liquid altitude with the liquid block passed in
-            chunkIn.setBlockState(blockPos, liquidBlockState, false);
+            writer.setBlockState(blockPos, liquidBlockState);
         } else { // Normal carving
-            chunkIn.setBlockState(blockPos, WATER.getBlockState(), false);
+            writer.setBlockState(blockPos, WATER.getBlockState());
 
             int x = blockPos.getX();
             int y = blockPos.getY();
             int z = blockPos.getZ();
 
             // Schedule fluid tick if along chunk boundary. Helps avoid weird floating water
+            int chunkX = writer.getChunk().getPos().x;
+            int chunkZ = writer.getChunk().getPos().z;
             for(Direction direction : Direction.Plane.HORIZONTAL) {
                 int j = blockPos.getX() + direction.getXOffset();
                 int k = blockPos.getZ() + direction.getZOffset();
-                if (j >> 4 != chunkIn.getPos().x || k >> 4 != chunkIn.getPos().z || chunkIn.getBlockState(blockPos.setPos(j, y, k)).isAir()) {
-                    chunkIn.setBlockState(blockPos, WATER.getBlockState(), false);
-                    chunkIn.getFluidsToBeTicked().scheduleTick(blockPos, WATER.getFluidState().getFluid(), 0);
+                if (j >> 4 != chunkX || k >> 4 != chunkZ) {
+                    // This block was already set to water above
+                    writer.scheduleFluidTick(blockPos, WATER.getFluidState().getFluid());
+                    break;
+                }
+                if (writer.getBlockState(blockPos.setPos(j, y, k)).isAir()) {
+                    writer.setBlockState(blockPos, WATER.getBlockState());
+                    writer.scheduleFluidTick(blockPos, WATER.getFluidState().getFluid());
                     break;
                 }
             }
@@ -171,33 +295,39 @@ public class CarverUtils {
 
             // Replace floating gravel with andesite, if enabled
             if (replaceGravel && blockStateAbove == GRAVEL)
-                chunkIn.setBlockState(blockPos.up(), ANDESITE, false);
+                writer.setBlockState(x, y + 1, z, ANDESITE);
         }
     }
 
-    public static void carveFloodedBlock(IChunk chunkIn, Random rand, BlockPos.Mutable blockPos, BlockState liquidBlockState, int liquidAltitude, BitSet carvingMask) {
-        carveFloodedBlock(chunkIn, rand, blockPos, liquidBlockState, liquidAltitude, false, carvingMask);
+    public static void carveFloodedBlock(SectionWriter writer, BiomeSnapshot biomes, Random rand, BlockPos.Mutable blockPos, BlockState liquidBlockState, int liquidAltitude, BitSet carvingMask) {
+        carveFloodedBlock(writer, biomes, rand, blockPos, liquidBlockState, liquidAltitude, false, carvingMask);
+    }
+
+    public static void carveFloodedBlock(SectionWriter writer, BiomeSnapshot biomes, Random rand, int x, int y, int z, BlockState liquidBlockState, int liquidAltitude, BitSet carvingMask) {
+        carveFloodedBlock(writer, biomes, rand, MUTABLE_POS.get().setPos(x, y, z), liquidBlockState, liquidAltitude, false, carvingMask);
     }
 
     /**
      * DEBUG method for visualizing cave systems. Used as a replacement for the {@code digBlock} method if the
      * debugVisualizer config option is enabled.
-     * @param chunkIn Chunk containing the block
-     * @param blockPos block position
+     * @param writer Writer for the chunk containing the block
+     * @param x block x-coordinate
+     * @param y block y-coordinate
+     * @param z block z-coordinate
      * @param blockState The blockState to set dug out blocks to
      * @param digBlock true if the block should be "dug"
      */
-    public static void debugCarveBlock(IChunk chunkIn, BlockPos blockPos, BlockState blockState, boolean digBlock) {
-        if (DEBUG_BLOCKS.contains(chunkIn.getBlockState(blockPos))) return;
+    public static void debugCarveBlock(SectionWriter writer, int x, int y, int z, BlockState blockState, boolean digBlock) {
+        if (DEBUG_BLOCKS.contains(writer.getBlockState(x, y, z))) return;
 
         if (digBlock)
-            chunkIn.setBlockState(blockPos, blockState, false);
+            writer.setBlockState(x, y, z, blockState);
         else
-            chunkIn.setBlockState(blockPos, Blocks.AIR.getDefaultState(), false);
+            writer.setBlockState(x, y, z, Blocks.AIR.getDefaultState());
     }
 
-    public static void debugCarveBlock(IChunk chunkIn, int x, int y, int z, BlockState blockState, boolean digBlock) {
-        debugCarveBlock(chunkIn, new BlockPos(x, y, z), blockState, digBlock);
+    public static void debugCarveBlock(SectionWriter writer, BlockPos blockPos, BlockState blockState, boolean digBlock) {
+        debugCarveBlock(writer, blockPos.getX(), blockPos.getY(), blockPos.getZ(), blockState, digBlock);
     }
 
     /**
@@ -208,82 +338,36 @@ public class CarverUtils {
      * @return true if the blockState can be replaced
      */
     public static boolean canReplaceBlock(BlockState blockState, BlockState blockStateAbove) {
-        Block block = blockState.getBlock();
-
-        // Avoid damaging trees
-        if (
-            blockState.getMaterial() == Material.LEAVES ||
-            blockState.getMaterial() == Material.WOOD
-        )
-            return false;
+        int flags = CarvabilityTable.getFlags(blockState);
+        int flagsAbove = CarvabilityTable.getFlags(blockStateAbove);
 
         // Avoid digging out under trees
-        if (blockStateAbove.getMaterial() == Material.WOOD)
-            return false;
-
-        // This should hopefully avoid damaging villages
-        if (
-            block == Blocks.FARMLAND ||
-            block == Blocks.GRASS_PATH
-        ) {
+        if ((flagsAbove & CarvabilityTable.WOOD) != 0)
             return false;
-        }
-
-        // Accept stone-like blocks added from other mods
-        if (
-            blockState.getMaterial() == Material.ROCK ||
-            blockState.getMaterial() == Material.CLAY ||
-            blockState.getMaterial() == Material.EARTH
-        )
-            return true;
 
-        // List of carvable blocks provided by vanilla
-        if (carvableBlocks.contains(block))
+        // Stone-like blocks and the list of carvable blocks provided by vanilla, excluding trees and village blocks
+        if ((flags & CarvabilityTable.CARVABLE) != 0)
             return true;
 
         // Only accept gravel and sand if water is not directly above it
-        return (block == Blocks.SAND || block == Blocks.GRAVEL)
-            && blockStateAbove.getMaterial() != Material.WATER;
+        return (flags & CarvabilityTable.SAND_OR_GRAVEL) != 0
+            && (flagsAbove & CarvabilityTable.WATER) == 0;
     }
 
     public static boolean canReplaceLiquidBlock(BlockState blockState, BlockState blockStateAbove) {
-        Block block = blockState.getBlock();
-
-        // Avoid damaging trees
-        if (blockState.getMaterial() == Material.LEAVES
-            || blockState.getMaterial() == Material.WOOD)
-            return false;
-
         // Avoid digging out under trees
-        if (blockStateAbove.getMaterial() == Material.WOOD)
+        if (CarvabilityTable.hasFlags(blockStateAbove, CarvabilityTable.WOOD))
             return false;
 
-        // This should hopefully avoid damaging villages
-        if (block == Blocks.FARMLAND
-            || block == Blocks.GRASS_PATH) {
-            return false;
-        }
-
-        // Accept stone-like blocks added from other mods
-        if (blockState.getMaterial() == Material.ROCK)
-            return true;
-
-        // List of carvable blocks provided by vanilla
-        if (liquidCarvableBlocks.contains(block))
-            return true;
-
-        return false;
+        // Stone-like blocks and the list of liquid carvable blocks provided by vanilla, excluding trees and village blocks
+        return CarvabilityTable.hasFlags(blockState, CarvabilityTable.LIQUID_CARVABLE);
     }
 
-    private static boolean isWaterAdjacent(IChunk chunkIn, BlockPos blockPos) {
-        int localX = BetterCavesUtils.getLocal(blockPos.getX());
-        int localZ = BetterCavesUtils.getLocal(blockPos.getZ());
-        int y = blockPos.getY();
-
-        return (y < 255 && chunkIn.getBlockState(blockPos.up()).getMaterial() == Material.WATER)
-            || localZ > 0 && chunkIn.getBlockState(blockPos.north()).getMaterial() == Material.WATER
-            || localX < 15 && chunkIn.getBlockState(blockPos.east()).getMaterial() == Material.WATER
-            || localZ < 15 && chunkIn.getBlockState(blockPos.south()).getMaterial() == Material.WATER
-            || localX > 0 && chunkIn.getBlockState(blockPos.west()).getMaterial() == Material.WATER;
+    private static boolean isWaterAdjacent(SectionWriter writer, BlockState blockStateAbove, int localX, int y, int localZ) {
+        return (y < 255 && CarvabilityTable.hasFlags(blockStateAbove, CarvabilityTable.WATER))
+            || localZ > 0 && CarvabilityTable.hasFlags(writer.getBlockState(localX, y, localZ - 1), CarvabilityTable.WATER)
+            || localX < 15 && CarvabilityTable.hasFlags(writer.getBlockState(localX + 1, y, localZ), CarvabilityTable.WATER)
+            || localZ < 15 && CarvabilityTable.hasFlags(writer.getBlockState(localX, y, localZ + 1), CarvabilityTable.WATER)
+            || localX > 0 && CarvabilityTable.hasFlags(writer.getBlockState(localX - 1, y, localZ), CarvabilityTable.WATER);
     }
 }
\ No newline at end of file
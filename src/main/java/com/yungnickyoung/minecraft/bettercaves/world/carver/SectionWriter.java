@@ -0,0 +1,217 @@
+package com.yungnickyoung.minecraft.bettercaves.world.carver;
+
+import net.minecraft.block.Block;
+import net.minecraft.block.BlockState;
+import net.minecraft.fluid.Fluid;
+import net.minecraft.block.Blocks;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.chunk.ChunkPrimer;
+import net.minecraft.world.chunk.ChunkSection;
+import net.minecraft.world.chunk.IChunk;
+import net.minecraft.world.gen.Heightmap;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Reads and writes the blocks of a chunk being carved directly through its sections.
+ * Going through {@link IChunk#setBlockState} updates heightmaps and takes the section's lock for every block, even
+ * though carvers write thousands of blocks per chunk. Instead, this writer accesses sections without locking, and
+ * defers heightmap and light source bookkeeping until {@link #flush} is called once carving is done.
+ *
+ * Only {@link ChunkPrimer}s are written to directly - any other chunk is simply read and written through IChunk.
+ * Positions may be given in either real (absolute) or chunk-local coordinates.
+ * A writer is only ever used by a single worldgen thread.
+ */
+public class SectionWriter {
+    private static final BlockState AIR = Blocks.AIR.getDefaultState();
+    private static final BlockState VOID_AIR = Blocks.VOID_AIR.getDefaultState();
+
+    private final IChunk chunk;
+
+    /** The chunk being carved, or null if it isn't a ChunkPrimer */
+    private final ChunkPrimer primer;
+
+    /** The chunk's sections. Empty sections are null, and are only created once a block other than air is written. */
+    private final ChunkSection[] sections;
+
+    /** Highest y-coordinate written to in each column, or -1 if the column hasn't been written to */
+    private final int[] maxWrittenY = new int[16 * 16];
+
+    /**
+     * Positions where a light-emitting block has been written, indexed the same way as carving masks.
+     * Lava regions write light-emitting blocks by the thousand, so they are only marked here and turned into
+     * light positions once, when the writer is flushed.
+     */
+    private final BitSet lightPositions = new BitSet(16 * 16 * 256);
+
+    /**
+     * Positions to schedule block and fluid ticks at, indexed the same way as carving masks.
+     * Flooded caves schedule ticks all along chunk boundaries, often more than once for the same position,
+     * so they are collected here and handed to the chunk's tick lists once, when the writer is flushed.
+     */
+    private final BitSet pendingBlockTicks = new BitSet(16 * 16 * 256);
+    private final BitSet pendingFluidTicks = new BitSet(16 * 16 * 256);
+
+    /**
+     * Position reused for light value lookups, since Forge lets a block's light value depend on its position.
+     * Kept separate from the positions carvers pass in, which may themselves be reused mutable positions.
+     */
+    private final BlockPos.Mutable lightPos = new BlockPos.Mutable();
+
+    public SectionWriter(IChunk chunk) {
+        this.chunk = chunk;
+        this.primer = chunk instanceof ChunkPrimer ? (ChunkPrimer) chunk : null;
+        this.sections = chunk.getSections();
+        Arrays.fill(maxWrittenY, -1);
+    }
+
+    public IChunk getChunk() {
+        return chunk;
+    }
+
+    public BlockState getBlockState(BlockPos pos) {
+        return getBlockState(pos.getX(), pos.getY(), pos.getZ());
+    }
+
+    public BlockState getBlockState(int x, int y, int z) {
+        if (primer == null) {
+            return chunk.getBlockState(new BlockPos(x, y, z));
+        }
+        if (y < 0 || y > 255) {
+            return VOID_AIR;
+        }
+        ChunkSection section = sections[y >> 4];
+        return ChunkSection.isEmpty(section) ? AIR : section.getBlockState(x & 0xF, y & 0xF, z & 0xF);
+    }
+
+    public void setBlockState(BlockPos pos, BlockState blockState) {
+        setBlockState(pos.getX(), pos.getY(), pos.getZ(), blockState);
+    }
+
+    public void setBlockState(int x, int y, int z, BlockState blockState) {
+        if (primer == null) {
+            chunk.setBlockState(new BlockPos(x, y, z), blockState, false);
+            return;
+        }
+        if (y < 0 || y > 255) {
+            return;
+        }
+
+        ChunkSection section = sections[y >> 4];
+        if (section == null) {
+            // Writing air to an empty section changes nothing
+            if (blockState.getBlock() == Blocks.AIR) {
+                return;
+            }
+            section = primer.getSection(y >> 4);
+        }
+        section.setBlockState(x & 0xF, y & 0xF, z & 0xF, blockState, false);
+
+        int column = (x & 0xF) * 16 + (z & 0xF);
+        maxWrittenY[column] = Math.max(maxWrittenY[column], y);
+        lightPos.setPos(primer.getPos().getXStart() + (x & 0xF), y, primer.getPos().getZStart() + (z & 0xF));
+        if (blockState.getLightValue(primer, lightPos) > 0) {
+            lightPositions.set((x & 0xF) | ((z & 0xF) << 4) | (y << 8));
+        }
+    }
+
+    /**
+     * Schedules a tick for the block at the given position once the writer is flushed.
+     */
+    public void scheduleBlockTick(BlockPos pos, Block block) {
+        if (primer == null) {
+            chunk.getBlocksToBeTicked().scheduleTick(pos, block, 0);
+            return;
+        }
+        pendingBlockTicks.set((pos.getX() & 0xF) | ((pos.getZ() & 0xF) << 4) | (pos.getY() << 8));
+    }
+
+    /**
+     * Schedules a tick for the fluid at the given position once the writer is flushed.
+     */
+    public void scheduleFluidTick(BlockPos pos, Fluid fluid) {
+        if (primer == null) {
+            chunk.getFluidsToBeTicked().scheduleTick(pos, fluid, 0);
+            return;
+        }
+        pendingFluidTicks.set((pos.getX() & 0xF) | ((pos.getZ() & 0xF) << 4) | (pos.getY() << 8));
+    }
+
+    /**
+     * Updates the chunk's heightmaps, light sources and tick lists to account for every block written
+     * since the last flush.
+     */
+    public void flush() {
+        if (primer == null) {
+            return;
+        }
+
+        // A ChunkPrimer's tick lists only keep track of positions, and tick whatever ends up there once the chunk is
+        // loaded, so the block or fluid passed along is only a formality.
+        int startX = primer.getPos().getXStart();
+        int startZ = primer.getPos().getZStart();
+        for (int i = pendingBlockTicks.nextSetBit(0); i >= 0; i = pendingBlockTicks.nextSetBit(i + 1)) {
+            int x = i & 0xF;
+            int z = (i >> 4) & 0xF;
+            int y = i >> 8;
+            primer.getBlocksToBeTicked().scheduleTick(new BlockPos(startX + x, y, startZ + z), getBlockState(x, y, z).getBlock(), 0);
+        }
+        for (int i = pendingFluidTicks.nextSetBit(0); i >= 0; i = pendingFluidTicks.nextSetBit(i + 1)) {
+            int x = i & 0xF;
+            int z = (i >> 4) & 0xF;
+            int y = i >> 8;
+            primer.getFluidsToBeTicked().scheduleTick(new BlockPos(startX + x, y, startZ + z), getBlockState(x, y, z).getFluidState().getFluid(), 0);
+        }
+        pendingBlockTicks.clear();
+        pendingFluidTicks.clear();
+
+        // Light sources that were later carved away again are left out
+        for (int i = lightPositions.nextSetBit(0); i >= 0; i = lightPositions.nextSetBit(i + 1)) {
+            int x = i & 0xF;
+            int z = (i >> 4) & 0xF;
+            int y = i >> 8;
+            if (getBlockState(x, y, z).getLightValue(primer, lightPos.setPos(startX + x, y, startZ + z)) > 0) {
+                primer.addLightPosition(new BlockPos(startX + x, y, startZ + z));
+            }
+        }
+        lightPositions.clear();
+
+        // Heightmaps the chunk doesn't have yet are calculated from scratch
+        EnumSet<Heightmap.Type> types = EnumSet.copyOf(primer.getStatus().getHeightMaps());
+        EnumSet<Heightmap.Type> missingTypes = EnumSet.copyOf(types);
+        for (Map.Entry<Heightmap.Type, Heightmap> entry : primer.getHeightmaps()) {
+            missingTypes.remove(entry.getKey());
+        }
+        if (!missingTypes.isEmpty()) {
+            Heightmap.updateChunkHeightmaps(primer, missingTypes);
+            types.removeAll(missingTypes);
+        }
+
+        // A column's height can only change if it was written to at or above its surface block. The highest
+        // blocking block written above the surface becomes the new surface - it may lie below non-blocking writes,
+        // e.g. debug blocks under the air the debug visualizer writes above them. If there is none, the heightmap
+        // searches down for the new surface in case the surface block itself was carved away.
+        for (Heightmap.Type type : types) {
+            Heightmap heightmap = primer.getHeightmap(type);
+            Predicate<BlockState> isBlocking = type.getHeightLimitPredicate();
+            for (int x = 0; x < 16; x++) {
+                for (int z = 0; z < 16; z++) {
+                    int height = heightmap.getHeight(x, z);
+                    int y = maxWrittenY[x * 16 + z];
+                    if (y < 0 || y < height - 1) {
+                        continue;
+                    }
+                    while (y >= height && !isBlocking.test(getBlockState(x, y, z))) {
+                        y--;
+                    }
+                    heightmap.update(x, y, z, getBlockState(x, y, z));
+                }
+            }
+        }
+        Arrays.fill(maxWrittenY, -1);
+    }
+}
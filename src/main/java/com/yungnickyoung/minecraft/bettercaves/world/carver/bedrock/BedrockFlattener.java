@@ -1,12 +1,10 @@
 package com.yungnickyoung.minecraft.bettercaves.world.carver.bedrock;
 
+import com.yungnickyoung.minecraft.bettercaves.world.carver.BiomeSnapshot;
+import com.yungnickyoung.minecraft.bettercaves.world.carver.SectionWriter;
 import net.minecraft.block.BlockState;
 import net.minecraft.block.Blocks;
 import net.minecraft.util.math.BlockPos;
-import net.minecraft.world.biome.Biome;
-import net.minecraft.world.chunk.IChunk;
-
-import java.util.function.Function;
 
 /**
  * Class containing static method for flattening bedrock.
@@ -18,7 +16,7 @@ public class BedrockFlattener {
      * Flattens bedrock in a given chunk
      * @param bedrockLayerWidth Width of the bedrock layer, in blocks
      */
-    public static void flattenBedrock(IChunk chunk, Function<BlockPos, Biome> biomePos, int bedrockLayerWidth) {
+    public static void flattenBedrock(SectionWriter writer, BiomeSnapshot biomes, int bedrockLayerWidth) {
         BlockPos.Mutable pos = new BlockPos.Mutable();
 
         // Replace normal bedrock at bottom of map with stone
@@ -26,8 +24,8 @@ public class BedrockFlattener {
             for (int z = 0; z < 16; z++) {
                 for (int y = 1; y < 5; y++) {
                     pos.setPos(x, y, z);
-                    if (chunk.getBlockState(pos) == BEDROCK)
-                        chunk.setBlockState(pos, biomePos.apply(pos).getGenerationSettings().getSurfaceBuilderConfig().getUnder(), false);
+                    if (writer.getBlockState(pos) == BEDROCK)
+                        writer.setBlockState(pos, biomes.getFillerBlock(x, z));
                 }
             }
         }
@@ -37,7 +35,7 @@ public class BedrockFlattener {
             for (int z = 0; z < 16; z++) {
                 for (int y = 1; y < bedrockLayerWidth; y++) {
                     pos.setPos(x, y, z);
-                    chunk.setBlockState(pos, BEDROCK, false);
+                    writer.setBlockState(pos, BEDROCK);
                 }
             }
         }
@@ -1,17 +1,17 @@
 package com.yungnickyoung.minecraft.bettercaves.world.carver.cave;
 
 import com.yungnickyoung.minecraft.bettercaves.BetterCaves;
+import com.yungnickyoung.minecraft.bettercaves.noise.NoiseCube;
 import com.yungnickyoung.minecraft.bettercaves.noise.NoiseGen;
+import com.yungnickyoung.minecraft.bettercaves.world.carver.BiomeSnapshot;
 import com.yungnickyoung.minecraft.bettercaves.world.carver.CarverSettings;
 import com.yungnickyoung.minecraft.bettercaves.world.carver.CarverUtils;
 import com.yungnickyoung.minecraft.bettercaves.world.carver.ICarver;
+import com.yungnickyoung.minecraft.bettercaves.world.carver.SectionWriter;
 import net.minecraft.block.BlockState;
 import net.minecraft.util.math.BlockPos;
-import net.minecraft.world.chunk.IChunk;
 
 import java.util.BitSet;
-import java.util.HashMap;
-import java.util.Map;
 import java.util.Random;
 
 public class CaveCarver implements ICarver {
@@ -33,6 +33,15 @@ public class CaveCarver implements ICarver {
     /** Adjustment value for the block two blocks above. Must be between 0 and 1.0 */
     private float yAdjustF2;
 
+    /** Per-thread array of carve decisions for a single column, indexed by y - bottomY */
+    private final ThreadLocal<boolean[]> digMaskPool = ThreadLocal.withInitial(() -> new boolean[256]);
+
+    /** Per-thread array of noise thresholds for a single column, indexed by y - bottomY */
+    private final ThreadLocal<float[]> thresholdPool = ThreadLocal.withInitial(() -> new float[256]);
+
+    /** Per-thread buffer holding the original noise tuples of the two blocks below the one being checked */
+    private final ThreadLocal<double[]> carryPool = ThreadLocal.withInitial(() -> new double[2 * settings.getNumGens()]);
+
     public CaveCarver(final CaveCarverBuilder builder) {
         settings = builder.getSettings();
         noiseGen = new NoiseGen(
@@ -41,7 +50,8 @@ public class CaveCarver implements ICarver {
             settings.getNoiseSettings(),
             settings.getNumGens(),
             settings.getyCompression(),
-            settings.getXzCompression()
+            settings.getXzCompression(),
+            settings.getySampleInterval()
         );
         surfaceCutoff = builder.getSurfaceCutoff();
         bottomY = builder.getBottomY();
@@ -55,9 +65,28 @@ public class CaveCarver implements ICarver {
             this.bottomY = 1;
             this.topY = 80;
         }
+
+        // A block is only dug out if every value in its noise tuple passes the threshold, so rows where the noise
+        // can't pass don't need to be interpolated or checked, and the remaining generators only need to be
+        // evaluated where the first one passes. Thresholds never drop below the base threshold,
+        // and only rise to 1.3x it near the surface (see generateThresholds).
+        // Y-adjustment blends each block's values into the two blocks above it, which is only safe to account
+        // for when the blend factors are proper weights.
+        boolean isYAdjustConvex = yAdjustF1 >= 0 && yAdjustF1 <= 1 && yAdjustF2 >= 0 && yAdjustF2 <= 1;
+        if (!enableYAdjust || isYAdjustConvex) {
+            float noiseThreshold = settings.getNoiseThreshold();
+            noiseGen.cullCellsBelowThreshold(Math.min(noiseThreshold, noiseThreshold * 1.3f), enableYAdjust ? 2 : 0);
+        }
     }
 
-    public void carveColumn(IChunk chunk, BlockPos colPos, int topY, double[][] noises, BlockState liquidBlock, boolean flooded, BitSet carvingMask) {
+    /**
+     * Carves out a column of blocks.
+     * @param biomes Biome snapshot of the chunk containing this column
+     * @param rand Random used to place blocks in flooded caves
+     * @param noiseCube Noise cube containing this column's noise tuples, starting at bottomY
+     * @param columnIndex Index of this column within the noise cube, as given by {@link NoiseCube#getColumnIndex}
+     */
+    public void carveColumn(SectionWriter writer, BiomeSnapshot biomes, Random rand, BlockPos colPos, int topY, NoiseCube noiseCube, int columnIndex, BlockState liquidBlock, boolean flooded, BitSet carvingMask) {
         int localX = colPos.getX() & 0xF;
         int localZ = colPos.getZ() & 0xF;
 
@@ -75,117 +104,120 @@ public class CaveCarver implements ICarver {
             transitionBoundary = 1;
 
         // Pre-compute thresholds to ensure accuracy during pre-processing
-        Map<Integer, Float> thresholds = generateThresholds(topY, bottomY, transitionBoundary);
-
-        // Do some pre-processing on the noises to facilitate better cave generation.
-        // Basically this makes caves taller to give players more headroom.
-        // See the javadoc for the function for more info.
-        if (this.enableYAdjust)
-            preprocessCaveNoiseCol(noises, topY, bottomY, thresholds, settings.getNumGens());
-
-        BlockPos.Mutable localPos = new BlockPos.Mutable(localX, 1, localZ);
-
-        // Dig out caves in this column, based on noise values
-        for (int y = topY; y >= bottomY; y--) {
-            if (y <= settings.getLiquidAltitude() && liquidBlock == null)
-                break;
-
-            double[] noiseBlock = noises[y - bottomY];
-            boolean digBlock = true;
-
-            for (double noise : noiseBlock) {
-                if (noise < thresholds.get(y)) {
-                    digBlock = false;
+        float[] thresholds = thresholdPool.get();
+        generateThresholds(topY, bottomY, transitionBoundary, thresholds);
+
+        // Decide which blocks to dig out, based on noise values
+        boolean[] digMask = digMaskPool.get();
+        calculateDigMask(noiseCube.getValues(), columnIndex, noiseCube.getActiveRows(), topY, thresholds, noiseCube.getNumGenerators(), digMask);
+
+        // Dig out the blocks that passed the threshold check, using the debug visualizer if enabled
+        if (settings.isEnableDebugVisualizer()) {
+            BlockPos.Mutable localPos = new BlockPos.Mutable(localX, 1, localZ);
+            for (int y = topY; y >= bottomY; y--) {
+                if (y <= settings.getLiquidAltitude() && liquidBlock == null)
                     break;
-                }
-            }
-
-            localPos.setPos(localX, y, localZ);
 
-            // Dig out the block if it passed the threshold check, using the debug visualizer if enabled
-            if (settings.isEnableDebugVisualizer()) {
-                CarverUtils.debugCarveBlock(chunk, localPos, settings.getDebugBlock(), digBlock);
-            }
-            else if (digBlock) {
-                if (flooded) {
-                    CarverUtils.carveFloodedBlock(chunk, new Random(), localPos, liquidBlock, settings.getLiquidAltitude(), settings.isReplaceFloatingGravel(), carvingMask);
-                } else {
-                    CarverUtils.carveBlock(chunk, localPos, liquidBlock, settings.getLiquidAltitude(), settings.isReplaceFloatingGravel(), carvingMask);
-                }
+                localPos.setPos(localX, y, localZ);
+                CarverUtils.debugCarveBlock(writer, localPos, settings.getDebugBlock(), digMask[y - bottomY]);
             }
         }
+        else {
+            CarverUtils.carveColumn(writer, biomes, rand, localX, localZ, digMask, bottomY, topY, liquidBlock, settings.getLiquidAltitude(), settings.isReplaceFloatingGravel(), flooded, carvingMask);
+        }
     }
 
     /**
-     * Preprocessing performed on a column of noise to adjust its values before comparing them to the threshold.
-     * This function adjusts the noise value of blocks based on the noise values of blocks below.
+     * Decides which blocks in a column should be dug out, working up from the bottom of the column.
+     *
+     * If y-adjustment is enabled, the noise values of each block whose original values pass the threshold are blended
+     * into the values of the blocks one and two above it before those are checked.
      * This has the effect of raising the ceilings of caves, giving the player more headroom.
      * Big shoutouts to the guys behind Worley's Caves for this great idea.
-     * @param noises The column of noises as a map, mapping the y-coordinate of a block to its NoiseTuple
+     * Adjustments only ever flow upwards from original values, so they are applied as the column is streamed,
+     * carrying the original values of the two blocks below along instead of modifying the noise cube.
+     *
+     * @param noises Backing array of the noise cube containing this column
+     * @param columnIndex Index of the first tuple of this column in the noises array
+     * @param activeRows Whether or not each row of the noise cube may have blocks dug out. Inactive rows are skipped.
      * @param topY Top y-coordinate of the noise column
-     * @param bottomY Bottom y-coordinate of the noise column
-     * @param thresholds Map of y-coordinates to noise thresholds. This is the output of the generateThresholds method.
-     * @param numGens Number of noise values to create per block. This is equal to the number of floats held
-     *                in each NoiseTuple for each block in the noise column.
+     * @param thresholds Noise threshold for each block in the column, indexed by y - bottomY.
+     *                   This is the output of the generateThresholds method.
+     * @param numGens Number of noise values to create per block. This is equal to the number of values held
+     *                in each noise tuple for each block in the noise column.
+     * @param digMask Array to write whether or not each block should be dug out to, indexed by y - bottomY
      */
-    private void preprocessCaveNoiseCol(double[][] noises, int topY, int bottomY, Map<Integer, Float> thresholds, int numGens) {
-        /* Adjust simplex noise values based on blocks above in order to give the player more headroom */
-        for (int y = topY; y >= bottomY; y--) {
-            int yIndex = y - bottomY;
-            double[] noiseBlock = noises[yIndex];
-            float threshold = thresholds.get(y);
-
-            boolean valid = true;
-            for (double noise : noiseBlock) {
-                if (noise < threshold) {
-                    valid = false;
-                    break;
-                }
-            }
+    private void calculateDigMask(double[] noises, int columnIndex, boolean[] activeRows, int topY, float[] thresholds, int numGens, boolean[] digMask) {
+        float f1 = yAdjustF1;
+        float f2 = yAdjustF2;
+
+        // Original noise values of the blocks one and two below, and whether or not they passed the threshold
+        double[] carry = carryPool.get();
+        int slotBelow = 0;
+        int slotTwoBelow = numGens;
+        boolean passedBelow = false;
+        boolean passedTwoBelow = false;
+
+        for (int y = bottomY; y <= topY; y++) {
+            int row = y - bottomY;
+            boolean passed = false;
+            boolean digBlock = false;
+
+            // Nothing can be dug out of inactive rows, and they never adjust the blocks above them
+            if (activeRows[row]) {
+                int tupleIndex = columnIndex + row * numGens;
+                float threshold = thresholds[row];
+                passed = true;
+                digBlock = true;
+
+                for (int i = 0; i < numGens; i++) {
+                    double value = noises[tupleIndex + i];
+                    if (value < threshold) {
+                        passed = false;
+                    }
 
-            // Adjust noise values of blocks above to give the player more head room
-            if (valid) {
-                float f1 = yAdjustF1;
-                float f2 = yAdjustF2;
+                    if (this.enableYAdjust) {
+                        if (passedBelow)
+                            value = ((1 - f1) * value) + (f1 * carry[slotBelow + i]);
+                        if (passedTwoBelow)
+                            value = ((1 - f2) * value) + (f2 * carry[slotTwoBelow + i]);
 
-                // Adjust block one above
-                if (y < topY) {
-                    double[] tupleAbove = noises[yIndex + 1];
-                    for (int i = 0; i < numGens; i++) {
-                        tupleAbove[i] = ((1 - f1) * tupleAbove[i]) + (f1 * noiseBlock[i]);
+                        // The block two below is no longer needed, so its slot now holds this block's original value
+                        carry[slotTwoBelow + i] = noises[tupleIndex + i];
                     }
-                }
 
-                // Adjust block two above
-                if (y < topY - 1) {
-                    double[] tupleTwoAbove = noises[yIndex + 2];
-                    for (int i = 0; i < numGens; i++) {
-                        tupleTwoAbove[i] = ((1 - f2) * tupleTwoAbove[i]) + (f2 * noiseBlock[i]);
+                    if (value < threshold) {
+                        digBlock = false;
                     }
                 }
             }
+            digMask[row] = digBlock;
+
+            // This block is now the one below, and the one below is now two below
+            int slot = slotBelow;
+            slotBelow = slotTwoBelow;
+            slotTwoBelow = slot;
+            passedTwoBelow = passedBelow;
+            passedBelow = passed;
         }
     }
 
     /**
-     * Generate a map of y-coordinates to thresholds for a column of blocks.
+     * Generate the thresholds for a column of blocks.
      * This is useful because the threshold will decrease near the surface, and it is useful (and more accurate)
      * to have a precomputed threshold value when doing y-adjustments for caves.
      * @param topY Top y-coordinate of the column
      * @param bottomY Bottom y-coordinate of the column
      * @param transitionBoundary The y-coordinate at which the caves start to close off
-     * @return Map of y-coordinates to noise thresholds
+     * @param thresholds Array to write the noise threshold for each block to, indexed by y - bottomY
      */
-    private Map<Integer, Float> generateThresholds(int topY, int bottomY, int transitionBoundary) {
-        Map<Integer, Float> thresholds = new HashMap<>();
+    private void generateThresholds(int topY, int bottomY, int transitionBoundary, float[] thresholds) {
         for (int realY = bottomY; realY <= topY; realY++) {
             float noiseThreshold = settings.getNoiseThreshold();
             if (realY >= transitionBoundary)
                 noiseThreshold *= (1 + .3f * ((float)(realY - transitionBoundary) / (topY - transitionBoundary)));
-            thresholds.put(realY, noiseThreshold);
+            thresholds[realY - bottomY] = noiseThreshold;
         }
-
-        return thresholds;
     }
 
     public NoiseGen getNoiseGen() {
@@ -49,6 +49,7 @@ public class CaveCarverBuilder {
                 this.settings.setXzCompression(config.cubicCaveXZCompression.get().floatValue());
                 this.settings.setyCompression(config.cubicCaveYCompression.get().floatValue());
                 this.settings.setPriority(config.cubicCavePriority.get());
+                this.settings.setySampleInterval(config.cubicCaveYSampleInterval.get());
                 this.surfaceCutoff = config.cubicCaveSurfaceCutoffDepth.get();
                 this.bottomY = config.cubicCaveBottom.get();
                 this.topY = config.cubicCaveTop.get();
@@ -67,6 +68,7 @@ public class CaveCarverBuilder {
                 this.settings.setXzCompression(config.simplexCaveXZCompression.get().floatValue());
                 this.settings.setyCompression(config.simplexCaveYCompression.get().floatValue());
                 this.settings.setPriority(config.simplexCavePriority.get());
+                this.settings.setySampleInterval(config.simplexCaveYSampleInterval.get());
                 this.surfaceCutoff = config.simplexCaveSurfaceCutoffDepth.get();
                 this.bottomY = config.simplexCaveBottom.get();
                 this.topY = config.simplexCaveTop.get();
@@ -183,6 +185,14 @@ public class CaveCarverBuilder {
         return this;
     }
 
+    /**
+     * @param ySampleInterval Vertical distance between sampled noise values. Use 1 to sample every block
+     */
+    public CaveCarverBuilder verticalSampleInterval(int ySampleInterval) {
+        settings.setySampleInterval(ySampleInterval);
+        return this;
+    }
+
     /**
      * @param noiseThreshold Noise threshold to determine whether or not a given block will be dug out
      */
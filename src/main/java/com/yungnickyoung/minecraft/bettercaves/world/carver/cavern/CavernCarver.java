@@ -2,13 +2,15 @@ package com.yungnickyoung.minecraft.bettercaves.world.carver.cavern;
 
 import com.yungnickyoung.minecraft.bettercaves.BetterCaves;
 import com.yungnickyoung.minecraft.bettercaves.enums.CavernType;
+import com.yungnickyoung.minecraft.bettercaves.noise.NoiseCube;
 import com.yungnickyoung.minecraft.bettercaves.noise.NoiseGen;
+import com.yungnickyoung.minecraft.bettercaves.world.carver.BiomeSnapshot;
 import com.yungnickyoung.minecraft.bettercaves.world.carver.CarverSettings;
 import com.yungnickyoung.minecraft.bettercaves.world.carver.CarverUtils;
 import com.yungnickyoung.minecraft.bettercaves.world.carver.ICarver;
+import com.yungnickyoung.minecraft.bettercaves.world.carver.SectionWriter;
 import net.minecraft.block.BlockState;
 import net.minecraft.util.math.BlockPos;
-import net.minecraft.world.chunk.IChunk;
 
 import java.util.BitSet;
 import java.util.Random;
@@ -24,6 +26,9 @@ public class CavernCarver implements ICarver {
     private int bottomY;
     private int topY;
 
+    /** Per-thread array of carve decisions for a single column, indexed by y - bottomY */
+    private final ThreadLocal<boolean[]> digMaskPool = ThreadLocal.withInitial(() -> new boolean[256]);
+
     public CavernCarver(final CavernCarverBuilder builder) {
         settings = builder.getSettings();
         noiseGen = new NoiseGen(
@@ -32,7 +37,8 @@ public class CavernCarver implements ICarver {
             settings.getNoiseSettings(),
             settings.getNumGens(),
             settings.getyCompression(),
-            settings.getXzCompression()
+            settings.getXzCompression(),
+            settings.getySampleInterval()
         );
         cavernType = builder.getCavernType();
         bottomY = builder.getBottomY();
@@ -43,9 +49,21 @@ public class CavernCarver implements ICarver {
             this.bottomY = 1;
             this.topY = 35;
         }
+
+        // A block is only dug out if the product of its noise values falls below the threshold, so rows where the
+        // noise can't fall below it don't need to be interpolated or checked. The threshold is only ever scaled
+        // towards 0 (see carveColumn), so it never exceeds the larger of the base threshold and 0.
+        noiseGen.cullCellsAboveProductThreshold(Math.max(settings.getNoiseThreshold(), 0));
     }
 
-    public void carveColumn(IChunk chunk, BlockPos colPos, int topY, float smoothAmp, double[][] noises, BlockState liquidBlock, boolean flooded, BitSet carvingMask) {
+    /**
+     * Carves out a column of blocks.
+     * @param biomes Biome snapshot of the chunk containing this column
+     * @param rand Random used to place blocks in flooded caves
+     * @param noiseCube Noise cube containing this column's noise tuples, starting at bottomY
+     * @param columnIndex Index of this column within the noise cube, as given by {@link NoiseCube#getColumnIndex}
+     */
+    public void carveColumn(SectionWriter writer, BiomeSnapshot biomes, Random rand, BlockPos colPos, int topY, float smoothAmp, NoiseCube noiseCube, int columnIndex, BlockState liquidBlock, boolean flooded, BitSet carvingMask) {
         int localX = colPos.getX() & 0xF;
         int localZ = colPos.getZ() & 0xF;
 
@@ -57,6 +75,36 @@ public class CavernCarver implements ICarver {
 
         // Set altitude at which caverns start closing off on the top
         topY -= 2;
+
+        // Decide which blocks to dig out, based on noise values
+        boolean[] digMask = digMaskPool.get();
+        calculateDigMask(noiseCube, columnIndex, topY, smoothAmp, digMask);
+
+        // Dig out the blocks that passed the threshold check, using the debug visualizer if enabled
+        if (settings.isEnableDebugVisualizer()) {
+            BlockPos.Mutable localPos = new BlockPos.Mutable(localX, 1, localZ);
+            for (int y = topY; y >= bottomY; y--) {
+                if (y <= settings.getLiquidAltitude() && liquidBlock == null)
+                    break;
+
+                localPos.setPos(localX, y, localZ);
+                CarverUtils.debugCarveBlock(writer, localPos, settings.getDebugBlock(), digMask[y - bottomY]);
+            }
+        }
+        else {
+            CarverUtils.carveColumn(writer, biomes, rand, localX, localZ, digMask, bottomY, topY, liquidBlock, settings.getLiquidAltitude(), settings.isReplaceFloatingGravel(), flooded, carvingMask);
+        }
+    }
+
+    /**
+     * Decides which blocks in a column should be dug out.
+     * @param noiseCube Noise cube containing this column's noise tuples, starting at bottomY
+     * @param columnIndex Index of this column within the noise cube
+     * @param topY Top y-coordinate of the column, after closing off the top
+     * @param smoothAmp Amount to scale thresholds by along region borders
+     * @param digMask Array to write whether or not each block should be dug out to, indexed by y - bottomY
+     */
+    private void calculateDigMask(NoiseCube noiseCube, int columnIndex, int topY, float smoothAmp, boolean[] digMask) {
         int topTransitionBoundary = topY - 6;
 
         // Set altitude at which caverns start closing off on the bottom
@@ -69,50 +117,39 @@ public class CavernCarver implements ICarver {
         topTransitionBoundary = Math.max(topTransitionBoundary, 1);
         bottomTransitionBoundary = Math.min(bottomTransitionBoundary, 255);
 
-        BlockPos.Mutable localPos = new BlockPos.Mutable(localX, 1, localZ);
+        double[] noises = noiseCube.getValues();
+        boolean[] activeRows = noiseCube.getActiveRows();
+        int numGens = noiseCube.getNumGenerators();
 
-        /* =============== Dig out caves and caverns in this chunk, based on noise values =============== */
         for (int y = topY; y >= bottomY; y--) {
-            if (y <= settings.getLiquidAltitude() && liquidBlock == null)
-                break;
-
             boolean digBlock = false;
 
-            // Compute a single noise value to represent all the noise values in the NoiseTuple
-            float noise = 1;
-            double[] noiseBlock = noises[y - bottomY];
-            for (double n : noiseBlock)
-                noise *= n;
-
-            // Adjust threshold if we're in the transition range to provide smoother transition into ceiling
-            float noiseThreshold = settings.getNoiseThreshold();
-            if (y >= topTransitionBoundary)
-                noiseThreshold *= (float) (y - topY) / (topTransitionBoundary - topY);
-
-            // Close off caverns at the bottom to hide bedrock and give some walkable area
-            if (y < bottomTransitionBoundary)
-                noiseThreshold *= (float) (y - bottomY) / (bottomTransitionBoundary - bottomY);
-
-            // Adjust threshold along region borders to create smooth transition
-            if (smoothAmp < 1)
-                noiseThreshold *= smoothAmp;
-
-            // Mark block for removal if the noise passes the threshold check
-            if (noise < noiseThreshold)
-                digBlock = true;
-
-            localPos.setPos(localX, y, localZ);
-
-            // Dig out the block if it passed the threshold check, using the debug visualizer if enabled
-            if (settings.isEnableDebugVisualizer()) {
-                CarverUtils.debugCarveBlock(chunk, localPos, settings.getDebugBlock(), digBlock);
-            } else if (digBlock) {
-                if (flooded) {
-                    CarverUtils.carveFloodedBlock(chunk, new Random(), localPos, liquidBlock, settings.getLiquidAltitude(), settings.isReplaceFloatingGravel(), carvingMask);
-                } else {
-                    CarverUtils.carveBlock(chunk, localPos, liquidBlock, settings.getLiquidAltitude(), settings.isReplaceFloatingGravel(), carvingMask);
-                }
+            // Nothing can be dug out of inactive rows
+            if (activeRows[y - bottomY]) {
+                // Compute a single noise value to represent all the noise values in the NoiseTuple
+                float noise = 1;
+                int tupleIndex = columnIndex + (y - bottomY) * numGens;
+                for (int i = 0; i < numGens; i++)
+                    noise *= noises[tupleIndex + i];
+
+                // Adjust threshold if we're in the transition range to provide smoother transition into ceiling
+                float noiseThreshold = settings.getNoiseThreshold();
+                if (y >= topTransitionBoundary)
+                    noiseThreshold *= (float) (y - topY) / (topTransitionBoundary - topY);
+
+                // Close off caverns at the bottom to hide bedrock and give some walkable area
+                if (y < bottomTransitionBoundary)
+                    noiseThreshold *= (float) (y - bottomY) / (bottomTransitionBoundary - bottomY);
+
+                // Adjust threshold along region borders to create smooth transition
+                if (smoothAmp < 1)
+                    noiseThreshold *= smoothAmp;
+
+                // Mark block for removal if the noise passes the threshold check
+                if (noise < noiseThreshold)
+                    digBlock = true;
             }
+            digMask[y - bottomY] = digBlock;
         }
     }
 
@@ -47,6 +47,7 @@ public class CavernCarverBuilder {
                 this.settings.setyCompression(config.liquidCavernYCompression.get().floatValue());
                 this.settings.setXzCompression(config.liquidCavernXZCompression.get().floatValue());
                 this.settings.setPriority(config.liquidCavernPriority.get());
+                this.settings.setySampleInterval(config.liquidCavernYSampleInterval.get());
                 this.bottomY = config.liquidCavernBottom.get();
                 this.topY = config.liquidCavernTop.get();
                 break;
@@ -60,6 +61,7 @@ public class CavernCarverBuilder {
                 this.settings.setyCompression(config.flooredCavernYCompression.get().floatValue());
                 this.settings.setXzCompression(config.flooredCavernXZCompression.get().floatValue());
                 this.settings.setPriority(config.flooredCavernPriority.get());
+                this.settings.setySampleInterval(config.flooredCavernYSampleInterval.get());
                 this.bottomY = config.flooredCavernBottom.get();
                 this.topY = config.flooredCavernTop.get();
                 break;
@@ -124,6 +126,14 @@ public class CavernCarverBuilder {
         return this;
     }
 
+    /**
+     * @param ySampleInterval Vertical distance between sampled noise values. Use 1 to sample every block
+     */
+    public CavernCarverBuilder verticalSampleInterval(int ySampleInterval) {
+        settings.setySampleInterval(ySampleInterval);
+        return this;
+    }
+
     /**
      * @param noiseThreshold Noise threshold to determine whether or not a given block will be dug out
      */
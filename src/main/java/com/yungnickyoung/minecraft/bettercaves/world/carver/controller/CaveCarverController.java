@@ -4,32 +4,50 @@ import com.yungnickyoung.minecraft.bettercaves.BetterCaves;
 import com.yungnickyoung.minecraft.bettercaves.config.BCSettings;
 import com.yungnickyoung.minecraft.bettercaves.config.util.ConfigHolder;
 import com.yungnickyoung.minecraft.bettercaves.enums.CaveType;
+import com.yungnickyoung.minecraft.bettercaves.noise.NoiseColumnCache;
+import com.yungnickyoung.minecraft.bettercaves.noise.NoiseCube;
+import com.yungnickyoung.minecraft.bettercaves.noise.NoiseLattice;
+import com.yungnickyoung.minecraft.bettercaves.noise.RegionMap;
+import com.yungnickyoung.minecraft.bettercaves.world.carver.BiomeSnapshot;
 import com.yungnickyoung.minecraft.bettercaves.world.carver.CarverNoiseRange;
 import com.yungnickyoung.minecraft.bettercaves.world.carver.ICarver;
+import com.yungnickyoung.minecraft.bettercaves.world.carver.SectionWriter;
 import com.yungnickyoung.minecraft.bettercaves.world.carver.cave.CaveCarver;
 import com.yungnickyoung.minecraft.bettercaves.world.carver.cave.CaveCarverBuilder;
 import com.yungnickyoung.minecraft.bettercaves.world.carver.vanilla.VanillaCaveCarver;
 import com.yungnickyoung.minecraft.bettercaves.world.carver.vanilla.VanillaCaveCarverBuilder;
+import com.yungnickyoung.minecraft.bettercaves.world.carver.vanilla.VanillaCaveCarverGroup;
 import com.yungnickyoung.minecraft.yungsapi.noise.FastNoise;
 import net.minecraft.block.BlockState;
 import net.minecraft.block.Blocks;
-import net.minecraft.util.Direction;
 import net.minecraft.util.math.BlockPos;
 import net.minecraft.world.ISeedReader;
 import net.minecraft.world.biome.Biome;
-import net.minecraft.world.chunk.IChunk;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.BitSet;
 import java.util.List;
-import java.util.function.Function;
-
-import static com.yungnickyoung.minecraft.bettercaves.util.BetterCavesUtils.isPosInWorld;
+import java.util.Random;
 
 public class CaveCarverController {
+    /** Valid positions covering the whole chunk. Never modified. */
+    private static final boolean[][] ALL_POSITIONS = new boolean[16][16];
+
+    static {
+        for (boolean[] row : ALL_POSITIONS) {
+            Arrays.fill(row, true);
+        }
+    }
+
     private ISeedReader world;
     private VanillaCaveCarver surfaceCaveCarver; // only used if surface caves enabled
+    private VanillaCaveCarverGroup vanillaCaveCarvers = new VanillaCaveCarverGroup();
+    private int vanillaCaveIndex = -1; // Index of the regional vanilla cave carver in the group, or -1 if it has no priority
+    private int surfaceCaveIndex = -1; // Index of the surface cave carver in the group, or -1 if surface caves are disabled
     private FastNoise caveRegionSampler;
+    private RegionMap regionMap;
+    private int caveRegionLayer; // Layer of the region map holding cave region noise
     private List<CarverNoiseRange> noiseRanges = new ArrayList<>();
 
     // Vars from config
@@ -38,7 +56,7 @@ public class CaveCarverController {
     private boolean isSurfaceCavesEnabled;
     private boolean isFloodedUndergroundEnabled;
 
-    public CaveCarverController(ISeedReader worldIn, ConfigHolder config) {
+    public CaveCarverController(ISeedReader worldIn, ConfigHolder config, NoiseColumnCache noiseColumnCache, RegionMap regionMap) {
         this.world = worldIn;
         this.isDebugViewEnabled = config.debugVisualizer.get();
         this.isOverrideSurfaceDetectionEnabled = config.overrideSurfaceDetection.get();
@@ -94,6 +112,13 @@ public class CaveCarverController {
         // Remove carvers with no priority
         carvers.removeIf(carver -> carver.getPriority() == 0);
 
+        // Share lattice columns across chunks
+        for (ICarver carver : carvers) {
+            if (carver instanceof CaveCarver) {
+                ((CaveCarver) carver).getNoiseGen().setColumnCache(noiseColumnCache);
+            }
+        }
+
         // Initialize vars for calculating sampler noise thresholds
         float maxPossibleNoiseThreshold = config.caveSpawnChance.get().floatValue() * .01f * 2 - 1;
         int totalPriority = carvers.stream().map(ICarver::getPriority).reduce(0, Integer::sum);
@@ -115,15 +140,34 @@ public class CaveCarverController {
 
             BetterCaves.LOGGER.debug("    --> RANGE FOUND: " + range);
         }
+
+        // Vanilla caves and surface caves share a single sweep over the chunks in range of each chunk.
+        // Regional vanilla caves are carved first.
+        for (CarverNoiseRange range : noiseRanges) {
+            if (range.getCarver() instanceof VanillaCaveCarver) {
+                this.vanillaCaveIndex = vanillaCaveCarvers.add((VanillaCaveCarver) range.getCarver(), true);
+                break;
+            }
+        }
+        if (isSurfaceCavesEnabled) {
+            this.surfaceCaveIndex = vanillaCaveCarvers.add(surfaceCaveCarver, false);
+        }
+
+        // Cave region noise is looked up from the region map, which samples it a tile at a time.
+        // The sampler is cellular, so agreeing sub-chunk corners say nothing about the columns between them,
+        // and every column is sampled.
+        this.regionMap = regionMap;
+        if (noiseRanges.size() > 0) {
+            this.caveRegionLayer = regionMap.addLayer(caveRegionSampler);
+        }
     }
 
-    public void carveChunk(IChunk chunk, int chunkX, int chunkZ, int[][] surfaceAltitudes, BlockState[][] liquidBlocks, Function<BlockPos, Biome> biomePos, BitSet airCarvingMask, BitSet liquidCarvingMask) {
+    public void carveChunk(SectionWriter writer, Random rand, int chunkX, int chunkZ, int[][] surfaceAltitudes, BlockState[][] liquidBlocks, BiomeSnapshot biomes, BitSet airCarvingMask, BitSet liquidCarvingMask) {
         // Prevent unnecessary computation if caves are disabled
         if (noiseRanges.size() == 0 && !isSurfaceCavesEnabled) {
             return;
         }
 
-        BlockPos.Mutable mutablePos = new BlockPos.Mutable();
         boolean flooded;
 
         // Flag to keep track of whether or not we've already carved vanilla caves for this chunk, since
@@ -134,107 +178,92 @@ public class CaveCarverController {
         // indicating which x-z coordinates are valid to be carved in
         boolean[][] validPositions = new boolean[16][16];
 
-        // Break into subchunks for noise interpolation
-        for (int subX = 0; subX < 16 / BCSettings.SUB_CHUNK_SIZE; subX++) {
-            for (int subZ = 0; subZ < 16 / BCSettings.SUB_CHUNK_SIZE; subZ++) {
-                int startX = subX * BCSettings.SUB_CHUNK_SIZE;
-                int startZ = subZ * BCSettings.SUB_CHUNK_SIZE;
-                int endX = startX + BCSettings.SUB_CHUNK_SIZE - 1;
-                int endZ = startZ + BCSettings.SUB_CHUNK_SIZE - 1;
-                BlockPos startPos = new BlockPos(chunkX * 16 + startX, 1, chunkZ * 16 + startZ);
-                BlockPos endPos = new BlockPos(chunkX * 16 + endX, 1, chunkZ * 16 + endZ);
-
-                noiseRanges.forEach(range -> range.setNoiseCube(null));
-
-                // Get max height in subchunk. This is needed for calculating the noise cube
-                int maxHeight = 0;
-                if (!isOverrideSurfaceDetectionEnabled) { // Only necessary if we aren't overriding surface detection
-                    for (int x = startX; x < endX; x++) {
-                        for (int z = startZ; z < endZ; z++) {
-                            maxHeight = Math.max(maxHeight, surfaceAltitudes[x][z]);
-                        }
-                    }
-                    for (CarverNoiseRange range : noiseRanges) {
-                        maxHeight = Math.max(maxHeight, range.getCarver().getTopY());
-                    }
-                }
+        // Noise lattice for each range in this chunk, and noise cube for each range in the current subchunk.
+        // Both are computed lazily, since most chunks only use one carver.
+        NoiseLattice[] noiseLattices = new NoiseLattice[noiseRanges.size()];
+        NoiseCube[] noiseCubes = new NoiseCube[noiseRanges.size()];
 
-                // Offset within subchunk
-                for (int offsetX = 0; offsetX < BCSettings.SUB_CHUNK_SIZE; offsetX++) {
-                    for (int offsetZ = 0; offsetZ < BCSettings.SUB_CHUNK_SIZE; offsetZ++) {
-                        int localX = startX + offsetX;
-                        int localZ = startZ + offsetZ;
-                        BlockPos colPos = new BlockPos(chunkX * 16 + localX, 1, chunkZ * 16 + localZ);
-
-                        flooded = isFloodedUndergroundEnabled
-                            && !isDebugViewEnabled
-                            && (biomePos.apply(colPos).getCategory() == Biome.Category.OCEAN);
-                        if (flooded) {
-                            if (
-                                (isPosInWorld(mutablePos.setPos(colPos).move(Direction.EAST), world) && biomePos.apply(mutablePos.setPos(colPos).move(Direction.EAST)).getCategory() != Biome.Category.OCEAN) ||
-                                (isPosInWorld(mutablePos.setPos(colPos).move(Direction.WEST), world) && biomePos.apply(mutablePos.setPos(colPos).move(Direction.WEST)).getCategory() != Biome.Category.OCEAN) ||
-                                (isPosInWorld(mutablePos.setPos(colPos).move(Direction.NORTH), world) && biomePos.apply(mutablePos.setPos(colPos).move(Direction.NORTH)).getCategory() != Biome.Category.OCEAN) ||
-                                (isPosInWorld(mutablePos.setPos(colPos).move(Direction.SOUTH), world) && biomePos.apply(mutablePos.setPos(colPos).move(Direction.SOUTH)).getCategory() != Biome.Category.OCEAN)
-                            ) {
-                                continue;
-                            }
-                        }
+        RegionMap.Tile regionTile = noiseRanges.size() > 0 ? regionMap.getTile(chunkX, chunkZ) : null;
+        BlockPos.Mutable colPos = new BlockPos.Mutable();
 
-                        int surfaceAltitude = surfaceAltitudes[localX][localZ];
-                        BlockState liquidBlock = liquidBlocks[localX][localZ];
+        // Break into subchunks for noise interpolation. Skipped if only surface caves are enabled, in which case
+        // there is no region tile.
+        if (regionTile != null) {
+            for (int subX = 0; subX < 16 / BCSettings.SUB_CHUNK_SIZE; subX++) {
+                for (int subZ = 0; subZ < 16 / BCSettings.SUB_CHUNK_SIZE; subZ++) {
+                    int startX = subX * BCSettings.SUB_CHUNK_SIZE;
+                    int startZ = subZ * BCSettings.SUB_CHUNK_SIZE;
 
-                        // Get noise values used to determine cave region
-                        float caveRegionNoise = caveRegionSampler.GetNoise(colPos.getX(), colPos.getZ());
+                    Arrays.fill(noiseCubes, null);
 
-                        // Carve cave using matching carver
-                        for (CarverNoiseRange range : noiseRanges) {
-                            if (!range.contains(caveRegionNoise)) {
+                    // Offset within subchunk
+                    for (int offsetX = 0; offsetX < BCSettings.SUB_CHUNK_SIZE; offsetX++) {
+                        for (int offsetZ = 0; offsetZ < BCSettings.SUB_CHUNK_SIZE; offsetZ++) {
+                            int localX = startX + offsetX;
+                            int localZ = startZ + offsetZ;
+                            colPos.setPos(chunkX * 16 + localX, 1, chunkZ * 16 + localZ);
+
+                            flooded = isFloodedUndergroundEnabled
+                                && !isDebugViewEnabled
+                                && (biomes.getCategory(localX, localZ) == Biome.Category.OCEAN);
+                            if (flooded && biomes.isFloodWall(localX, localZ, true)) {
                                 continue;
                             }
-                            if (range.getCarver() instanceof CaveCarver) {
-                                CaveCarver carver = (CaveCarver) range.getCarver();
-                                int bottomY = carver.getBottomY();
-                                int topY = Math.min(surfaceAltitude, carver.getTopY());
-                                if (isOverrideSurfaceDetectionEnabled) {
-                                    topY = carver.getTopY();
-                                    maxHeight = carver.getTopY();
+
+                            int surfaceAltitude = surfaceAltitudes[localX][localZ];
+                            BlockState liquidBlock = liquidBlocks[localX][localZ];
+
+                            // Get noise values used to determine cave region
+                            float caveRegionNoise = regionTile.getValue(caveRegionLayer, colPos.getX(), colPos.getZ());
+
+                            // Carve cave using matching carver
+                            for (int rangeIndex = 0; rangeIndex < noiseRanges.size(); rangeIndex++) {
+                                CarverNoiseRange range = noiseRanges.get(rangeIndex);
+                                if (!range.contains(caveRegionNoise)) {
+                                    continue;
                                 }
-                                if (isDebugViewEnabled) {
-                                    topY = 128;
-                                    maxHeight = 128;
+                                if (range.getCarver() instanceof CaveCarver) {
+                                    CaveCarver carver = (CaveCarver) range.getCarver();
+                                    int bottomY = carver.getBottomY();
+                                    int topY = Math.min(surfaceAltitude, carver.getTopY());
+                                    if (isOverrideSurfaceDetectionEnabled) {
+                                        topY = carver.getTopY();
+                                    }
+                                    if (isDebugViewEnabled) {
+                                        topY = 128;
+                                    }
+                                    if (noiseCubes[rangeIndex] == null) {
+                                        if (noiseLattices[rangeIndex] == null) {
+                                            // Columns never go above the carver's top, so neither does the lattice
+                                            int maxHeight = Math.max(bottomY, isDebugViewEnabled ? 128 : carver.getTopY());
+                                            noiseLattices[rangeIndex] = carver.getNoiseGen().getNoiseLattice(chunkX, chunkZ, bottomY, maxHeight);
+                                        }
+                                        noiseCubes[rangeIndex] = carver.getNoiseGen().interpolateNoiseCube(noiseLattices[rangeIndex], subX, subZ);
+                                    }
+                                    NoiseCube noiseCube = noiseCubes[rangeIndex];
+                                    carver.carveColumn(writer, biomes, rand, colPos, topY, noiseCube, noiseCube.getColumnIndex(offsetX, offsetZ), liquidBlock, flooded, flooded ? liquidCarvingMask : airCarvingMask);
+                                    break;
                                 }
-                                if (range.getNoiseCube() == null) {
-                                    range.setNoiseCube(carver.getNoiseGen().interpolateNoiseCube(startPos, endPos, bottomY, maxHeight));
+                                else if (range.getCarver() instanceof VanillaCaveCarver) {
+                                    validPositions[localX][localZ] = true;
+                                    shouldCarveVanillaCaves = true;
                                 }
-                                double[][] noiseColumn = range.getNoiseCube()[offsetX][offsetZ];
-                                carver.carveColumn(chunk, colPos, topY, noiseColumn, liquidBlock, flooded, flooded ? liquidCarvingMask : airCarvingMask);
-                                break;
-                            }
-                            else if (range.getCarver() instanceof VanillaCaveCarver) {
-                                validPositions[localX][localZ] = true;
-                                shouldCarveVanillaCaves = true;
                             }
                         }
                     }
                 }
             }
         }
-        if (shouldCarveVanillaCaves) {
-            VanillaCaveCarver carver = null;
-            for (CarverNoiseRange range : noiseRanges) {
-                if (range.getCarver() instanceof VanillaCaveCarver) {
-                    carver = (VanillaCaveCarver) range.getCarver();
-                    break;
-                }
-            }
-            if (carver != null) {
-                carver.generate(world, chunkX, chunkZ, chunk, true, liquidBlocks, biomePos, validPositions, airCarvingMask, liquidCarvingMask);
-            }
+
+        // Generate vanilla caves in valid positions, and surface caves everywhere if enabled
+        boolean[][][] vanillaCaveValidPositions = new boolean[vanillaCaveCarvers.size()][][];
+        if (shouldCarveVanillaCaves && vanillaCaveIndex >= 0) {
+            vanillaCaveValidPositions[vanillaCaveIndex] = validPositions;
         }
-        // Generate surface caves if enabled
-        if (isSurfaceCavesEnabled) {
-            surfaceCaveCarver.generate(world, chunkX, chunkZ, chunk, false, liquidBlocks, biomePos, airCarvingMask, liquidCarvingMask);
+        if (surfaceCaveIndex >= 0) {
+            vanillaCaveValidPositions[surfaceCaveIndex] = ALL_POSITIONS;
         }
+        vanillaCaveCarvers.generate(world, rand, chunkX, chunkZ, writer, liquidBlocks, biomes, vanillaCaveValidPositions, airCarvingMask, liquidCarvingMask);
     }
 
     /**
@@ -258,12 +287,5 @@ public class CaveCarverController {
 
     public void setWorld(ISeedReader worldIn) {
         this.world = worldIn;
-        this.surfaceCaveCarver.setWorld(worldIn);
-        for (CarverNoiseRange range : noiseRanges) {
-            if (range.getCarver() instanceof VanillaCaveCarver) {
-                ((VanillaCaveCarver)range.getCarver()).setWorld(worldIn);
-                break;
-            }
-        }
     }
 }
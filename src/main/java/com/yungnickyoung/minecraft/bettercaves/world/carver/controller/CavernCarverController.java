@@ -4,9 +4,14 @@ import com.yungnickyoung.minecraft.bettercaves.BetterCaves;
 import com.yungnickyoung.minecraft.bettercaves.config.BCSettings;
 import com.yungnickyoung.minecraft.bettercaves.config.util.ConfigHolder;
 import com.yungnickyoung.minecraft.bettercaves.enums.CavernType;
+import com.yungnickyoung.minecraft.bettercaves.noise.NoiseColumnCache;
+import com.yungnickyoung.minecraft.bettercaves.noise.NoiseCube;
+import com.yungnickyoung.minecraft.bettercaves.noise.NoiseLattice;
 import com.yungnickyoung.minecraft.bettercaves.noise.NoiseUtils;
-import com.yungnickyoung.minecraft.bettercaves.util.BetterCavesUtils;
+import com.yungnickyoung.minecraft.bettercaves.noise.RegionMap;
+import com.yungnickyoung.minecraft.bettercaves.world.carver.BiomeSnapshot;
 import com.yungnickyoung.minecraft.bettercaves.world.carver.CarverNoiseRange;
+import com.yungnickyoung.minecraft.bettercaves.world.carver.SectionWriter;
 import com.yungnickyoung.minecraft.bettercaves.world.carver.cavern.CavernCarver;
 import com.yungnickyoung.minecraft.bettercaves.world.carver.cavern.CavernCarverBuilder;
 import com.yungnickyoung.minecraft.yungsapi.noise.FastNoise;
@@ -15,16 +20,18 @@ import net.minecraft.block.Blocks;
 import net.minecraft.util.math.BlockPos;
 import net.minecraft.world.ISeedReader;
 import net.minecraft.world.biome.Biome;
-import net.minecraft.world.chunk.IChunk;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.BitSet;
 import java.util.List;
-import java.util.function.Function;
+import java.util.Random;
 
 public class CavernCarverController {
     private ISeedReader world;
     private FastNoise cavernRegionSampler;
+    private RegionMap regionMap;
+    private int cavernRegionLayer; // Layer of the region map holding cavern region noise
     private List<CarverNoiseRange> noiseRanges = new ArrayList<>();
 
     // Vars from config
@@ -32,7 +39,7 @@ public class CavernCarverController {
     private boolean isOverrideSurfaceDetectionEnabled;
     private boolean isFloodedUndergroundEnabled;
 
-    public CavernCarverController(ISeedReader worldIn, ConfigHolder config) {
+    public CavernCarverController(ISeedReader worldIn, ConfigHolder config, NoiseColumnCache noiseColumnCache, RegionMap regionMap) {
         this.world = worldIn;
         this.isDebugViewEnabled = config.debugVisualizer.get();
         this.isOverrideSurfaceDetectionEnabled = config.overrideSurfaceDetection.get();
@@ -74,6 +81,11 @@ public class CavernCarverController {
 
         float currNoise = -1f;
 
+        // Share lattice columns across chunks
+        for (CavernCarver carver : carvers) {
+            carver.getNoiseGen().setColumnCache(noiseColumnCache);
+        }
+
         for (CavernCarver carver : carvers) {
             BetterCaves.LOGGER.debug("--> CARVER");
             float rangeCDFPercent = (float)carver.getPriority() / totalPriority * spawnChance;
@@ -87,9 +99,18 @@ public class CavernCarverController {
             BetterCaves.LOGGER.debug("    --> RANGE PERCENT LENGTH WANTED: " + rangeCDFPercent);
             BetterCaves.LOGGER.debug("    --> RANGE FOUND: " + range);
         }
+
+        // Cavern region noise is looked up from the region map, which samples it a tile at a time.
+        // Only sub-chunks straddling the boundary between two ranges, or the smoothed edges of a range,
+        // need every column sampled.
+        this.regionMap = regionMap;
+        if (noiseRanges.size() > 0) {
+            this.cavernRegionLayer = regionMap.addLayer(cavernRegionSampler,
+                noise -> CarverNoiseRange.getRegionClass(noiseRanges, noise));
+        }
     }
 
-    public void carveChunk(IChunk chunk, int chunkX, int chunkZ, int[][] surfaceAltitudes, BlockState[][] liquidBlocks, Function<BlockPos, Biome> biomePos, BitSet airCarvingMask, BitSet liquidCarvingMask) {
+    public void carveChunk(SectionWriter writer, Random rand, int chunkX, int chunkZ, int[][] surfaceAltitudes, BlockState[][] liquidBlocks, BiomeSnapshot biomes, BitSet airCarvingMask, BitSet liquidCarvingMask) {
         // Prevent unnecessary computation if caverns are disabled
         if (noiseRanges.size() == 0) {
             return;
@@ -98,40 +119,30 @@ public class CavernCarverController {
         boolean flooded = false;
         float smoothAmpFloodFactor = 1;
 
+        // Noise lattice for each range in this chunk, and noise cube for each range in the current subchunk.
+        // Both are computed lazily, since most chunks only use one carver.
+        NoiseLattice[] noiseLattices = new NoiseLattice[noiseRanges.size()];
+        NoiseCube[] noiseCubes = new NoiseCube[noiseRanges.size()];
+
+        RegionMap.Tile regionTile = regionMap.getTile(chunkX, chunkZ);
+        BlockPos.Mutable colPos = new BlockPos.Mutable();
+
         for (int subX = 0; subX < 16 / BCSettings.SUB_CHUNK_SIZE; subX++) {
             for (int subZ = 0; subZ < 16 / BCSettings.SUB_CHUNK_SIZE; subZ++) {
                 int startX = subX * BCSettings.SUB_CHUNK_SIZE;
                 int startZ = subZ * BCSettings.SUB_CHUNK_SIZE;
-                int endX = startX + BCSettings.SUB_CHUNK_SIZE - 1;
-                int endZ = startZ + BCSettings.SUB_CHUNK_SIZE - 1;
-                BlockPos startPos = new BlockPos(chunkX * 16 + startX, 1, chunkZ * 16 + startZ);
-                BlockPos endPos = new BlockPos(chunkX * 16 + endX, 1, chunkZ * 16 + endZ);
-
-                noiseRanges.forEach(range -> range.setNoiseCube(null));
-
-                // Get max height in subchunk. This is needed for calculating the noise cube
-                int maxHeight = 0;
-                if (!isOverrideSurfaceDetectionEnabled) { // Only necessary if we aren't overriding surface detection
-                    for (int x = startX; x < endX; x++) {
-                        for (int z = startZ; z < endZ; z++) {
-                            maxHeight = Math.max(maxHeight, surfaceAltitudes[x][z]);
-                        }
-                    }
-                    for (CarverNoiseRange range : noiseRanges) {
-                        CavernCarver carver = (CavernCarver) range.getCarver();
-                        maxHeight = Math.max(maxHeight, carver.getTopY());
-                    }
-                }
+
+                Arrays.fill(noiseCubes, null);
 
                 for (int offsetX = 0; offsetX < BCSettings.SUB_CHUNK_SIZE; offsetX++) {
                     for (int offsetZ = 0; offsetZ < BCSettings.SUB_CHUNK_SIZE; offsetZ++) {
                         int localX = startX + offsetX;
                         int localZ = startZ + offsetZ;
-                        BlockPos colPos = new BlockPos(chunkX * 16 + localX, 1, chunkZ * 16 + localZ);
+                        colPos.setPos(chunkX * 16 + localX, 1, chunkZ * 16 + localZ);
 
                         if (isFloodedUndergroundEnabled && !isDebugViewEnabled) {
-                            flooded = biomePos.apply(colPos).getCategory() == Biome.Category.OCEAN;
-                            smoothAmpFloodFactor = BetterCavesUtils.getDistFactor(world, biomePos, colPos, 2, flooded ? BetterCavesUtils.isNotOcean : BetterCavesUtils.isOcean);
+                            flooded = biomes.getCategory(localX, localZ) == Biome.Category.OCEAN;
+                            smoothAmpFloodFactor = biomes.getFloodSmoothFactor(localX, localZ, flooded);
                             if (smoothAmpFloodFactor <= .25) { // Wall between flooded and normal caves.
                                 continue; // Continue to prevent unnecessary noise calculation
                             }
@@ -141,10 +152,11 @@ public class CavernCarverController {
                         BlockState liquidBlock = liquidBlocks[localX][localZ];
 
                         // Get noise values used to determine cavern region
-                        float cavernRegionNoise = cavernRegionSampler.GetNoise(colPos.getX(), colPos.getZ());
+                        float cavernRegionNoise = regionTile.getValue(cavernRegionLayer, colPos.getX(), colPos.getZ());
 
                         // Carve cavern using matching carver
-                        for (CarverNoiseRange range : noiseRanges) {
+                        for (int rangeIndex = 0; rangeIndex < noiseRanges.size(); rangeIndex++) {
+                            CarverNoiseRange range = noiseRanges.get(rangeIndex);
                             if (!range.contains(cavernRegionNoise)) {
                                 continue;
                             }
@@ -153,14 +165,18 @@ public class CavernCarverController {
                             int topY = isDebugViewEnabled ? carver.getTopY() : Math.min(surfaceAltitude, carver.getTopY());
                             if (isOverrideSurfaceDetectionEnabled) {
                                 topY = carver.getTopY();
-                                maxHeight = carver.getTopY();
                             }
                             float smoothAmp = range.getSmoothAmp(cavernRegionNoise) * smoothAmpFloodFactor;
-                            if (range.getNoiseCube() == null) {
-                                range.setNoiseCube(carver.getNoiseGen().interpolateNoiseCube(startPos, endPos, bottomY, maxHeight));
+                            if (noiseCubes[rangeIndex] == null) {
+                                if (noiseLattices[rangeIndex] == null) {
+                                    // Columns never go above the carver's top, so neither does the lattice
+                                    int maxHeight = Math.max(bottomY, carver.getTopY());
+                                    noiseLattices[rangeIndex] = carver.getNoiseGen().getNoiseLattice(chunkX, chunkZ, bottomY, maxHeight);
+                                }
+                                noiseCubes[rangeIndex] = carver.getNoiseGen().interpolateNoiseCube(noiseLattices[rangeIndex], subX, subZ);
                             }
-                            double[][] noiseColumn = range.getNoiseCube()[offsetX][offsetZ];
-                            carver.carveColumn(chunk, colPos, topY, smoothAmp, noiseColumn, liquidBlock, flooded, flooded ? liquidCarvingMask : airCarvingMask);
+                            NoiseCube noiseCube = noiseCubes[rangeIndex];
+                            carver.carveColumn(writer, biomes, rand, colPos, topY, smoothAmp, noiseCube, noiseCube.getColumnIndex(offsetX, offsetZ), liquidBlock, flooded, flooded ? liquidCarvingMask : airCarvingMask);
                             break;
                         }
                     }
@@ -3,6 +3,7 @@ package com.yungnickyoung.minecraft.bettercaves.world.carver.controller;
 import com.yungnickyoung.minecraft.bettercaves.BetterCaves;
 import com.yungnickyoung.minecraft.bettercaves.config.util.ConfigHolder;
 import com.yungnickyoung.minecraft.bettercaves.noise.NoiseUtils;
+import com.yungnickyoung.minecraft.bettercaves.noise.RegionMap;
 import com.yungnickyoung.minecraft.yungsapi.math.ColPos;
 import com.yungnickyoung.minecraft.yungsapi.noise.FastNoise;
 import net.minecraft.block.BlockState;
@@ -16,9 +17,11 @@ import java.util.Random;
 
 public class LiquidRegionController {
     private FastNoise liquidRegionSampler;
+    private RegionMap regionMap;
+    private int liquidRegionLayer; // Layer of the region map holding liquid region noise
     private ISeedReader world;
     private String dimensionName;
-    private Random rand;
+    private final ThreadLocal<Random> randomPool = ThreadLocal.withInitial(Random::new); // Shared by worldgen threads, so each has its own
 
     // Vars determined from config
     private BlockState lavaBlock;
@@ -29,10 +32,9 @@ public class LiquidRegionController {
     private static final float SMOOTH_RANGE = .04f;
     private static final float SMOOTH_DELTA = .01f;
 
-    public LiquidRegionController(ISeedReader worldIn, ConfigHolder config) {
+    public LiquidRegionController(ISeedReader worldIn, ConfigHolder config, RegionMap regionMap) {
         this.world = worldIn;
         this.dimensionName = Objects.requireNonNull(world.getWorld().getDimensionKey().getLocation()).toString();
-        this.rand = new Random();
 
         // Vars from config
         lavaBlock = getLavaBlockFromString(config.lavaBlock.get());
@@ -44,25 +46,37 @@ public class LiquidRegionController {
         liquidRegionSampler = new FastNoise();
         liquidRegionSampler.SetSeed((int) world.getSeed() + 444);
         liquidRegionSampler.SetFrequency(waterRegionSize);
+
+        // Liquid region noise is looked up from the region map, which samples it a tile at a time.
+        // Only sub-chunks near the border between water and lava need every column sampled.
+        this.regionMap = regionMap;
+        if (liquidRegionThreshold > -1f) { // Don't bother calculating noise if water regions are disabled
+            this.liquidRegionLayer = regionMap.addLayer(liquidRegionSampler, this::getLiquidRegionClass);
+        }
     }
 
-    public BlockState[][] getLiquidBlocksForChunk(int chunkX, int chunkZ) {
+    /**
+     * Determines the liquid block for each column in a chunk.
+     * @param blocks Array to write each column's liquid block to, indexed by chunk-local x and z.
+     *               Columns without a liquid block are set to null.
+     */
+    public void getLiquidBlocksForChunk(int chunkX, int chunkZ, BlockState[][] blocks) {
+        Random rand = randomPool.get();
         rand.setSeed(world.getSeed() ^ chunkX ^ chunkZ);
-        BlockState[][] blocks = new BlockState[16][16];
+        RegionMap.Tile regionTile = liquidRegionThreshold > -1f ? regionMap.getTile(chunkX, chunkZ) : null;
         ColPos.Mutable pos = new ColPos.Mutable();
         for (int x = 0; x < 16; x++) {
             for (int z = 0; z < 16; z++) {
                 pos.setPos(chunkX * 16 + x, chunkZ * 16 + z);
-                blocks[x][z] = getLiquidBlockAtPos(rand, pos);
+                blocks[x][z] = getLiquidBlockAtPos(rand, regionTile, pos);
             }
         }
-        return blocks;
     }
 
-    private BlockState getLiquidBlockAtPos(Random rand, ColPos colPos) {
+    private BlockState getLiquidBlockAtPos(Random rand, RegionMap.Tile regionTile, ColPos colPos) {
         BlockState liquidBlock = lavaBlock;
         if (liquidRegionThreshold > -1f) { // Don't bother calculating noise if water regions are disabled
-            float liquidRegionNoise = liquidRegionSampler.GetNoise(colPos.getX(), colPos.getZ());
+            float liquidRegionNoise = regionTile.getValue(liquidRegionLayer, colPos.getX(), colPos.getZ());
 
             // If water region threshold check is passed, change liquid block to water
             float randOffset = rand.nextFloat() * SMOOTH_DELTA + SMOOTH_RANGE;
@@ -74,6 +88,18 @@ public class LiquidRegionController {
         return liquidBlock;
     }
 
+    /**
+     * Classifies liquid region noise for the region map. Values are only classified if they are far enough from
+     * the liquid region threshold to be unaffected by the random offset applied to it.
+     */
+    private int getLiquidRegionClass(float liquidRegionNoise) {
+        if (liquidRegionNoise < liquidRegionThreshold - (SMOOTH_RANGE + SMOOTH_DELTA))
+            return 0; // Water
+        if (liquidRegionNoise >= liquidRegionThreshold + (SMOOTH_RANGE + SMOOTH_DELTA))
+            return 1; // Lava
+        return RegionMap.Classifier.MIXED;
+    }
+
     private BlockState getLavaBlockFromString(String lavaString) {
         BlockState lavaBlock;
         try {
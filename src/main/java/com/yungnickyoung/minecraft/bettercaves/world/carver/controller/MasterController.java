@@ -4,17 +4,19 @@ package com.yungnickyoung.minecraft.bettercaves.world.carver.controller;
 import com.yungnickyoung.minecraft.bettercaves.BetterCaves;
 import com.yungnickyoung.minecraft.bettercaves.config.io.ConfigLoader;
 import com.yungnickyoung.minecraft.bettercaves.config.util.ConfigHolder;
+import com.yungnickyoung.minecraft.bettercaves.noise.NoiseColumnCache;
+import com.yungnickyoung.minecraft.bettercaves.noise.RegionMap;
+import com.yungnickyoung.minecraft.bettercaves.world.carver.BiomeSnapshot;
+import com.yungnickyoung.minecraft.bettercaves.world.carver.SectionWriter;
 import com.yungnickyoung.minecraft.bettercaves.world.carver.bedrock.BedrockFlattener;
 import net.minecraft.block.BlockState;
-import net.minecraft.util.math.BlockPos;
 import net.minecraft.world.ISeedReader;
-import net.minecraft.world.biome.Biome;
 import net.minecraft.world.chunk.IChunk;
 import net.minecraft.world.gen.Heightmap;
 
 import java.util.BitSet;
 import java.util.Objects;
-import java.util.function.Function;
+import java.util.Random;
 
 public class MasterController {
     private ISeedReader world;
@@ -27,14 +29,31 @@ public class MasterController {
     private LiquidRegionController liquidRegionController;
     private RavineCarverController ravineCarverController;
 
-    public boolean carveRegion(IChunk chunkIn, Function<BlockPos, Biome> biomePos, int chunkX, int chunkZ, BitSet airCarvingMask, BitSet liquidCarvingMask) {
+    // Lattice columns shared between chunks. Null if disabled in config.
+    private NoiseColumnCache noiseColumnCache;
+
+    // Region noise shared by the cave, cavern and liquid region controllers
+    private RegionMap regionMap;
+
+    // Per-thread arrays and RNG reused for every chunk, so carving a chunk doesn't allocate them
+    private final ThreadLocal<int[][]> surfaceAltitudesPool = ThreadLocal.withInitial(() -> new int[16][16]);
+    private final ThreadLocal<BlockState[][]> liquidBlocksPool = ThreadLocal.withInitial(() -> new BlockState[16][16]);
+    private final ThreadLocal<Random> randomPool = ThreadLocal.withInitial(Random::new);
+
+    public boolean carveRegion(IChunk chunkIn, int chunkX, int chunkZ, BitSet airCarvingMask, BitSet liquidCarvingMask) {
+        // Resolve biomes in and around this chunk once, for use by all carvers
+        BiomeSnapshot biomes = new BiomeSnapshot(world, chunkX, chunkZ);
+
+        // All carvers write blocks through the same writer, which updates heightmaps and light sources once at the end
+        SectionWriter writer = new SectionWriter(chunkIn);
+
         // Flatten bedrock into single layer, if enabled in user config, before carving caves
         if (configHolder.flattenBedrock.get()) {
-            BedrockFlattener.flattenBedrock(chunkIn, biomePos, configHolder.bedrockWidth.get());
+            BedrockFlattener.flattenBedrock(writer, biomes, configHolder.bedrockWidth.get());
         }
 
         // Determine surface altitudes in this chunk
-        int[][] surfaceAltitudes = new int[16][16];
+        int[][] surfaceAltitudes = surfaceAltitudesPool.get();
         for (int x = 0; x < 16; x++) {
             for (int z = 0; z < 16; z++) {
                 surfaceAltitudes[x][z] = configHolder.overrideSurfaceDetection.get()
@@ -46,12 +65,18 @@ public class MasterController {
         }
 
         // Determine liquid blocks for this chunk
-        BlockState[][] liquidBlocks = liquidRegionController.getLiquidBlocksForChunk(chunkX, chunkZ);
+        BlockState[][] liquidBlocks = liquidBlocksPool.get();
+        liquidRegionController.getLiquidBlocksForChunk(chunkX, chunkZ, liquidBlocks);
+
+        // Random used to place blocks in flooded caves, seeded by chunk
+        Random rand = randomPool.get();
+        rand.setSeed(world.getSeed() ^ chunkX * 341873128712L ^ chunkZ * 132897987541L);
 
         // Carve chunk
-        ravineCarverController.carveChunk(chunkIn, chunkX, chunkZ, liquidBlocks, biomePos, airCarvingMask, liquidCarvingMask);
-        caveCarverController.carveChunk(chunkIn, chunkX, chunkZ, surfaceAltitudes, liquidBlocks, biomePos, airCarvingMask, liquidCarvingMask);
-        cavernCarverController.carveChunk(chunkIn, chunkX, chunkZ, surfaceAltitudes, liquidBlocks, biomePos, airCarvingMask, liquidCarvingMask);
+        ravineCarverController.carveChunk(writer, chunkX, chunkZ, liquidBlocks, biomes, airCarvingMask, liquidCarvingMask);
+        caveCarverController.carveChunk(writer, rand, chunkX, chunkZ, surfaceAltitudes, liquidBlocks, biomes, airCarvingMask, liquidCarvingMask);
+        cavernCarverController.carveChunk(writer, rand, chunkX, chunkZ, surfaceAltitudes, liquidBlocks, biomes, airCarvingMask, liquidCarvingMask);
+        writer.flush();
 
         return true;
     }
@@ -74,10 +99,17 @@ public class MasterController {
         // Load config from file for this dimension
         this.configHolder = dimensionName.equals("") ? new ConfigHolder() : ConfigLoader.loadConfigFromFileForDimension(dimensionName);
 
+        // Initialize noise column cache, which is shared by all cave and cavern carvers in this dimension
+        long noiseCacheBytes = configHolder.noiseCacheSize.get() * 1024L * 1024L;
+        this.noiseColumnCache = noiseCacheBytes > 0 ? new NoiseColumnCache(noiseCacheBytes) : null;
+
+        // Initialize region map, which each controller registers its region sampler with
+        this.regionMap = new RegionMap();
+
         // Initialize controllers
-        this.caveCarverController   = new CaveCarverController(worldIn, configHolder);
-        this.cavernCarverController = new CavernCarverController(worldIn, configHolder);
-        this.liquidRegionController = new LiquidRegionController(worldIn, configHolder);
+        this.caveCarverController   = new CaveCarverController(worldIn, configHolder, noiseColumnCache, regionMap);
+        this.cavernCarverController = new CavernCarverController(worldIn, configHolder, noiseColumnCache, regionMap);
+        this.liquidRegionController = new LiquidRegionController(worldIn, configHolder, regionMap);
         this.ravineCarverController = new RavineCarverController(worldIn, configHolder);
 
         BetterCaves.LOGGER.debug(String.format("BETTER CAVES WORLD CARVER INITIALIZED WITH SEED %d IN %s", seed, dimensionName));
@@ -0,0 +1,105 @@
+package com.yungnickyoung.minecraft.bettercaves.world.carver.ravine;
+
+import java.util.Arrays;
+
+/**
+ * A single simulated ravine, as the list of ellipsoids it may carve.
+ * The random walk of a ravine doesn't depend on the chunk being carved, so it is simulated once and each chunk
+ * carves only the ellipsoids near it. Ravines are immutable once simulated.
+ */
+class Ravine {
+    /** Seed the ravine was simulated with. Also seeds the random used for flooded blocks. */
+    private final long seed;
+
+    /** Width the ravine was started with */
+    private final float width;
+
+    /** Horizontal stretch factor at each y-coordinate, which gives ravine walls their ledges */
+    private final float[] heightToHorizontalStretchFactor;
+
+    private int size;
+
+    /** Center and semi-axes of each ellipsoid, in the order they are carved */
+    private double[] centerX = new double[64], centerY = new double[64], centerZ = new double[64];
+    private double[] xzRadii = new double[64], yRadii = new double[64];
+
+    /** Number of steps left in the ravine when each ellipsoid was carved */
+    private int[] distancesToEnd = new int[64];
+
+    Ravine(long seed, float width, float[] heightToHorizontalStretchFactor) {
+        this.seed = seed;
+        this.width = width;
+        this.heightToHorizontalStretchFactor = heightToHorizontalStretchFactor;
+    }
+
+    /**
+     * Records an ellipsoid the ravine may carve. Only called while the ravine is being simulated.
+     */
+    void addEllipsoid(double x, double y, double z, double xzRadius, double yRadius, int distanceToEnd) {
+        if (size == centerX.length) {
+            int capacity = size * 2;
+            centerX = Arrays.copyOf(centerX, capacity);
+            centerY = Arrays.copyOf(centerY, capacity);
+            centerZ = Arrays.copyOf(centerZ, capacity);
+            xzRadii = Arrays.copyOf(xzRadii, capacity);
+            yRadii = Arrays.copyOf(yRadii, capacity);
+            distancesToEnd = Arrays.copyOf(distancesToEnd, capacity);
+        }
+        centerX[size] = x;
+        centerY[size] = y;
+        centerZ[size] = z;
+        xzRadii[size] = xzRadius;
+        yRadii[size] = yRadius;
+        distancesToEnd[size] = distanceToEnd;
+        size++;
+    }
+
+    long getSeed() {
+        return seed;
+    }
+
+    float getWidth() {
+        return width;
+    }
+
+    float getStretchFactor(int y) {
+        return heightToHorizontalStretchFactor[y];
+    }
+
+    /**
+     * @return the number of ellipsoids in the ravine
+     */
+    int size() {
+        return size;
+    }
+
+    double getCenterX(int ellipsoid) {
+        return centerX[ellipsoid];
+    }
+
+    double getCenterY(int ellipsoid) {
+        return centerY[ellipsoid];
+    }
+
+    double getCenterZ(int ellipsoid) {
+        return centerZ[ellipsoid];
+    }
+
+    /**
+     * @return the semi-axis of the given ellipsoid along the x and z axes
+     */
+    double getXZRadius(int ellipsoid) {
+        return xzRadii[ellipsoid];
+    }
+
+    /**
+     * @return the semi-axis of the given ellipsoid along the y axis
+     */
+    double getYRadius(int ellipsoid) {
+        return yRadii[ellipsoid];
+    }
+
+    int getDistanceToEnd(int ellipsoid) {
+        return distancesToEnd[ellipsoid];
+    }
+}
@@ -2,20 +2,20 @@ package com.yungnickyoung.minecraft.bettercaves.world.carver.ravine;
 
 import com.mojang.serialization.Codec;
 import com.yungnickyoung.minecraft.bettercaves.config.util.ConfigHolder;
-import com.yungnickyoung.minecraft.bettercaves.util.BetterCavesUtils;
+import com.yungnickyoung.minecraft.bettercaves.world.carver.BiomeSnapshot;
 import com.yungnickyoung.minecraft.bettercaves.world.carver.CarverUtils;
+import com.yungnickyoung.minecraft.bettercaves.world.carver.SectionWriter;
 import net.minecraft.block.BlockState;
 import net.minecraft.util.math.BlockPos;
 import net.minecraft.util.math.MathHelper;
 import net.minecraft.world.ISeedReader;
 import net.minecraft.world.biome.Biome;
-import net.minecraft.world.chunk.IChunk;
 import net.minecraft.world.gen.carver.CanyonWorldCarver;
 import net.minecraft.world.gen.feature.ProbabilityConfig;
 
+import java.util.Arrays;
 import java.util.BitSet;
 import java.util.Random;
-import java.util.function.Function;
 
 /**
  * Re-implements vanilla ravine carver, but with a few modifications for Better Caves config options.
@@ -29,9 +29,6 @@ public class RavineCarver extends CanyonWorldCarver {
     private boolean isReplaceGravelEnabled;
     private int liquidAltitude;
 
-    // Vanilla logic
-    private final float[] heightToHorizontalStretchFactor = new float[1024];
-
     public RavineCarver(ISeedReader worldIn, ConfigHolder config, Codec<ProbabilityConfig> codec) {
         super(codec);
         this.world = worldIn;
@@ -40,11 +37,15 @@ public class RavineCarver extends CanyonWorldCarver {
         this.liquidAltitude = config.liquidAltitude.get();
     }
 
-    public void carve(IChunk chunkIn, Random rand, int seaLevel, int chunkX, int chunkZ, int originChunkX, int originChunkZ, BlockState[][] liquidBlocks, Function<BlockPos, Biome> biomePos, BitSet airCarvingMask, BitSet liquidCarvingMask) {
+    /**
+     * Simulates the ravine started by the given chunk.
+     * @param rand Random seeded for the chunk, which has already passed the carver's probability check
+     */
+    Ravine simulate(Random rand, int chunkX, int chunkZ) {
         int i = (this.func_222704_c() * 2 - 1) * 16;
-        double startX = chunkX * 16 + rand.nextInt(16);
-        double startY = rand.nextInt(rand.nextInt(40) + 8) + 20;
-        double startZ = chunkZ * 16 + rand.nextInt(16);
+        double ravineStartX = chunkX * 16 + rand.nextInt(16);
+        double ravineStartY = rand.nextInt(rand.nextInt(40) + 8) + 20;
+        double ravineStartZ = chunkZ * 16 + rand.nextInt(16);
 
         float yaw = rand.nextFloat() * ((float)Math.PI * 2F);
         float pitch = (rand.nextFloat() - 0.5F) * 2.0F / 8.0F;
@@ -55,21 +56,21 @@ public class RavineCarver extends CanyonWorldCarver {
         int startCounter = 0;
         int endCounter = i - rand.nextInt(i / 4);
 
-        this.carveRavine(chunkIn, rand.nextLong(), seaLevel, originChunkX, originChunkZ, startX, startY, startZ, width, yaw, pitch, startCounter, endCounter, heightModifier, liquidBlocks, biomePos, airCarvingMask, liquidCarvingMask);
-    }
-
-    private void carveRavine(IChunk chunkIn, long seed, int seaLevel, int originChunkX, int originChunkZ, double ravineStartX, double ravineStartY, double ravineStartZ, float width, float yaw, float pitch, int startCounter, int endCounter, double heightModifier, BlockState[][] liquidBlocks, Function<BlockPos, Biome> biomePos, BitSet airCarvingMask, BitSet liquidCarvingMask) {
+        long seed = rand.nextLong();
         Random random = new Random(seed);
+        float[] heightToHorizontalStretchFactor = new float[256];
         float f = 1.0F;
 
-        for(int i = 0; i < 256; ++i) {
-            if (i == 0 || random.nextInt(3) == 0) {
+        for(int y = 0; y < 256; ++y) {
+            if (y == 0 || random.nextInt(3) == 0) {
                 f = 1.0F + random.nextFloat() * random.nextFloat();
             }
 
-            this.heightToHorizontalStretchFactor[i] = f * f;
+            heightToHorizontalStretchFactor[y] = f * f;
         }
 
+        Ravine ravine = new Ravine(seed, width, heightToHorizontalStretchFactor);
+
         // Variables to slightly change the yaw/pitch for each iteration in the while loop below.
         float yawModifier = 0.0F;
         float pitchModifier = 0.0F;
@@ -104,78 +105,116 @@ public class RavineCarver extends CanyonWorldCarver {
             yawModifier = yawModifier + (random.nextFloat() - random.nextFloat()) * random.nextFloat() * 4.0F;
 
             if (random.nextInt(4) != 0) {
-                if (!this.canCarveBranch(originChunkX, originChunkZ, ravineStartX, ravineStartZ, startCounter, endCounter, width)) {
-                    return;
+                ravine.addEllipsoid(ravineStartX, ravineStartY, ravineStartZ, xzOffset, yOffset, endCounter - startCounter);
+            }
+            startCounter++;
+        }
+
+        return ravine;
+    }
+
+    /**
+     * @return indices of the ellipsoids of the ravine carved in the given chunk, in carving order, or null if there are none.
+     * A ravine stops being carved in a chunk once it can no longer reach it.
+     */
+    int[] getEllipsoids(Ravine ravine, int originChunkX, int originChunkZ) {
+        int[] carved = null;
+        int numCarved = 0;
+        for (int ellipsoid = 0; ellipsoid < ravine.size(); ellipsoid++) {
+            if (!this.canCarveBranch(originChunkX, originChunkZ, ravine.getCenterX(ellipsoid), ravine.getCenterZ(ellipsoid), ravine.getDistanceToEnd(ellipsoid), ravine.getWidth())) {
+                break;
+            }
+            if (isNearChunk(originChunkX, originChunkZ, ravine.getCenterX(ellipsoid), ravine.getCenterZ(ellipsoid), ravine.getXZRadius(ellipsoid))) {
+                if (carved == null) {
+                    carved = new int[ravine.size() - ellipsoid];
                 }
+                carved[numCarved++] = ellipsoid;
+            }
+        }
+        return carved == null ? null : Arrays.copyOf(carved, numCarved);
+    }
 
-                this.carveRegion(chunkIn, seed, seaLevel, originChunkX, originChunkZ, ravineStartX, ravineStartY, ravineStartZ, xzOffset, yOffset, liquidBlocks, biomePos, airCarvingMask, liquidCarvingMask);
+    /**
+     * Carves the given ravine segments into the chunk being carved, in order.
+     */
+    public void carveSegments(SectionWriter writer, int seaLevel, int originChunkX, int originChunkZ, RavineIndex.Segment[] segments, BlockState[][] liquidBlocks, BiomeSnapshot biomes, BitSet airCarvingMask, BitSet liquidCarvingMask) {
+        for (RavineIndex.Segment segment : segments) {
+            for (int ellipsoid : segment.getEllipsoids()) {
+                this.carveRegion(writer, segment.getRavine(), ellipsoid, seaLevel, originChunkX, originChunkZ, liquidBlocks, biomes, airCarvingMask, liquidCarvingMask);
             }
-            startCounter++;
         }
     }
 
-    protected boolean canCarveBranch(int originChunkX, int originChunkZ, double ravineStartX, double ravineStartZ, int startCounter, int endCounter, float width) {
+    protected boolean canCarveBranch(int originChunkX, int originChunkZ, double ravineStartX, double ravineStartZ, int distanceToEnd, float width) {
         double originBlockX = originChunkX * 16 + 8;
         double originBlockZ = originChunkZ * 16 + 8;
         double ravineStartXOffsetFromCenter = ravineStartX - originBlockX;
         double ravineStartZOffsetFromCenter = ravineStartZ - originBlockZ;
-        double distanceToEnd = endCounter - startCounter;
         double d5 = width + 2.0F + 16.0F;
-        return ravineStartXOffsetFromCenter * ravineStartXOffsetFromCenter + ravineStartZOffsetFromCenter * ravineStartZOffsetFromCenter - distanceToEnd * distanceToEnd <= d5 * d5;
+        return ravineStartXOffsetFromCenter * ravineStartXOffsetFromCenter + ravineStartZOffsetFromCenter * ravineStartZOffsetFromCenter - (double) distanceToEnd * distanceToEnd <= d5 * d5;
     }
 
-    protected void carveRegion(IChunk chunkIn, long seed, int seaLevel, int originChunkX, int originChunkZ, double ravineStartX, double ravineStartY, double ravineStartZ, double xzOffset, double yOffset, BlockState[][] liquidBlocks, Function<BlockPos, Biome> biomePos, BitSet airCarvingMask, BitSet liquidCarvingMask) {
-        BlockState liquidBlock;
-        Random rand = new Random(seed + (long)originChunkX + (long)originChunkZ);
+    /**
+     * @return true if an ellipsoid is close enough to the origin chunk to be carved in it
+     */
+    private static boolean isNearChunk(int originChunkX, int originChunkZ, double ravineStartX, double ravineStartZ, double xzOffset) {
         double originBlockX = originChunkX * 16 + 8;
         double originBlockZ = originChunkZ * 16 + 8;
+        return !(ravineStartX < originBlockX - 16.0D - xzOffset * 2.0D) && !(ravineStartZ < originBlockZ - 16.0D - xzOffset * 2.0D) && !(ravineStartX > originBlockX + 16.0D + xzOffset * 2.0D) && !(ravineStartZ > originBlockZ + 16.0D + xzOffset * 2.0D);
+    }
 
-        // Only continue if ravine is close enough to origin
-        if (!(ravineStartX < originBlockX - 16.0D - xzOffset * 2.0D) && !(ravineStartZ < originBlockZ - 16.0D - xzOffset * 2.0D) && !(ravineStartX > originBlockX + 16.0D + xzOffset * 2.0D) && !(ravineStartZ > originBlockZ + 16.0D + xzOffset * 2.0D)) {
-            // Determine the bounds of the region we are carving, ensuring it is within the chunk
-            int minLocalX = Math.max(MathHelper.floor(ravineStartX - xzOffset) - originChunkX * 16 - 1, 0);
-            int maxLocalX = Math.min(MathHelper.floor(ravineStartX + xzOffset) - originChunkX * 16 + 1, 16);
-            int minY = Math.max(MathHelper.floor(ravineStartY - yOffset) - 1, 1);
-            int maxY = Math.min(MathHelper.floor(ravineStartY + yOffset) + 1, this.maxHeight - 8);
-            int minLocalZ = Math.max(MathHelper.floor(ravineStartZ - xzOffset) - originChunkZ * 16 - 1, 0);
-            int maxLocalZ = Math.min(MathHelper.floor(ravineStartZ + xzOffset) - originChunkZ * 16 + 1, 16);
-
-            BlockPos.Mutable mutableBlockPos = new BlockPos.Mutable();
-
-            for (int currLocalX = minLocalX; currLocalX < maxLocalX; ++currLocalX) {
-                int realX = currLocalX + originChunkX * 16;
-
-                // Distance along the x-axis from the center (ravineStart) of this ellipsoid.
-                // You can think of this value as (x/a), where a is the length of the ellipsoid's semi-axis in the x direction.
-                double xAxisDist = ((double) realX + 0.5D - ravineStartX) / xzOffset;
-
-                for (int currLocalZ = minLocalZ; currLocalZ < maxLocalZ; ++currLocalZ) {
-                    int realZ = currLocalZ + originChunkZ * 16;
-
-                    // Distance along the z-axis from the center (ravineStart) of this ellipsoid.
-                    // You can think of this value as (z/b), where b is the length of the ellipsoid's semi-axis in the z direction (same as a in this case).
-                    double zAxisDist = ((double) realZ + 0.5D - ravineStartZ) / xzOffset;
-
-                    // Only operate on points within ellipse on XZ axis. Avoids unnecessary computation along y axis
-                    if (!(xAxisDist * xAxisDist + zAxisDist * zAxisDist >= 1.0D)) {
-                        for (int currY = maxY; currY > minY; --currY) {
-                            // Distance along the y-axis from the center (ravineStart) of this ellipsoid.
-                            // You can think of this value as (y/c), where c is the length of the ellipsoid's semi-axis in the y direction.
-                            double yAxisDist = ((double) currY - 0.5D - ravineStartY) / yOffset;
-
-                            // Only operate on points within the ellipsoid.
-                            // This conditional is validating the current coordinate against the equation of the ellipsoid, that is,
-                            // (x/a)^2 + (z/b)^2 + (y/c)^2 <= 1.
-                            if (!this.isPositionExcluded(xAxisDist, yAxisDist, zAxisDist, currY)) {
-                                mutableBlockPos.setPos(realX, currY, realZ);
-                                liquidBlock = liquidBlocks[currLocalX][currLocalZ];
-
-                                // Don't carve space between water and lava regions
-                                if (currY <= liquidAltitude && liquidBlock == null)
-                                    return;
-
-                                this.carveBlock(chunkIn, rand, seaLevel, mutableBlockPos, liquidBlock, biomePos, airCarvingMask, liquidCarvingMask);
-                            }
+    protected void carveRegion(SectionWriter writer, Ravine ravine, int ellipsoid, int seaLevel, int originChunkX, int originChunkZ, BlockState[][] liquidBlocks, BiomeSnapshot biomes, BitSet airCarvingMask, BitSet liquidCarvingMask) {
+        BlockState liquidBlock;
+        Random rand = new Random(ravine.getSeed() + (long)originChunkX + (long)originChunkZ);
+        double ravineStartX = ravine.getCenterX(ellipsoid);
+        double ravineStartY = ravine.getCenterY(ellipsoid);
+        double ravineStartZ = ravine.getCenterZ(ellipsoid);
+        double xzOffset = ravine.getXZRadius(ellipsoid);
+        double yOffset = ravine.getYRadius(ellipsoid);
+
+        // Determine the bounds of the region we are carving, ensuring it is within the chunk
+        int minLocalX = Math.max(MathHelper.floor(ravineStartX - xzOffset) - originChunkX * 16 - 1, 0);
+        int maxLocalX = Math.min(MathHelper.floor(ravineStartX + xzOffset) - originChunkX * 16 + 1, 16);
+        int minY = Math.max(MathHelper.floor(ravineStartY - yOffset) - 1, 1);
+        int maxY = Math.min(MathHelper.floor(ravineStartY + yOffset) + 1, this.maxHeight - 8);
+        int minLocalZ = Math.max(MathHelper.floor(ravineStartZ - xzOffset) - originChunkZ * 16 - 1, 0);
+        int maxLocalZ = Math.min(MathHelper.floor(ravineStartZ + xzOffset) - originChunkZ * 16 + 1, 16);
+
+        BlockPos.Mutable mutableBlockPos = new BlockPos.Mutable();
+
+        for (int currLocalX = minLocalX; currLocalX < maxLocalX; ++currLocalX) {
+            int realX = currLocalX + originChunkX * 16;
+
+            // Distance along the x-axis from the center (ravineStart) of this ellipsoid.
+            // You can think of this value as (x/a), where a is the length of the ellipsoid's semi-axis in the x direction.
+            double xAxisDist = ((double) realX + 0.5D - ravineStartX) / xzOffset;
+
+            for (int currLocalZ = minLocalZ; currLocalZ < maxLocalZ; ++currLocalZ) {
+                int realZ = currLocalZ + originChunkZ * 16;
+
+                // Distance along the z-axis from the center (ravineStart) of this ellipsoid.
+                // You can think of this value as (z/b), where b is the length of the ellipsoid's semi-axis in the z direction (same as a in this case).
+                double zAxisDist = ((double) realZ + 0.5D - ravineStartZ) / xzOffset;
+
+                // Only operate on points within ellipse on XZ axis. Avoids unnecessary computation along y axis
+                if (!(xAxisDist * xAxisDist + zAxisDist * zAxisDist >= 1.0D)) {
+                    for (int currY = maxY; currY > minY; --currY) {
+                        // Distance along the y-axis from the center (ravineStart) of this ellipsoid.
+                        // You can think of this value as (y/c), where c is the length of the ellipsoid's semi-axis in the y direction.
+                        double yAxisDist = ((double) currY - 0.5D - ravineStartY) / yOffset;
+
+                        // Only operate on points within the ellipsoid.
+                        // This conditional is validating the current coordinate against the equation of the ellipsoid, that is,
+                        // (x/a)^2 + (z/b)^2 + (y/c)^2 <= 1.
+                        if (!this.isPositionExcluded(ravine, xAxisDist, yAxisDist, zAxisDist, currY)) {
+                            mutableBlockPos.setPos(realX, currY, realZ);
+                            liquidBlock = liquidBlocks[currLocalX][currLocalZ];
+
+                            // Don't carve space between water and lava regions
+                            if (currY <= liquidAltitude && liquidBlock == null)
+                                return;
+
+                            this.carveBlock(writer, rand, seaLevel, mutableBlockPos, liquidBlock, biomes, airCarvingMask, liquidCarvingMask);
                         }
                     }
                 }
@@ -183,11 +222,11 @@ public class RavineCarver extends CanyonWorldCarver {
         }
     }
 
-    private boolean isPositionExcluded(double xAxisDist, double yAxisDist, double zAxisDist, int currY) {
-        return (xAxisDist * xAxisDist + zAxisDist * zAxisDist) * (double)this.heightToHorizontalStretchFactor[currY - 1] + yAxisDist * yAxisDist / 6.0D >= 1.0D;
+    private boolean isPositionExcluded(Ravine ravine, double xAxisDist, double yAxisDist, double zAxisDist, int currY) {
+        return (xAxisDist * xAxisDist + zAxisDist * zAxisDist) * (double)ravine.getStretchFactor(currY - 1) + yAxisDist * yAxisDist / 6.0D >= 1.0D;
     }
 
-    private void carveBlock(IChunk chunkIn, Random rand, int seaLevel, BlockPos.Mutable blockPos, BlockState liquidBlockState, Function<BlockPos, Biome> biomePos, BitSet airCarvingMask, BitSet liquidCarvingMask) {
+    private void carveBlock(SectionWriter writer, Random rand, int seaLevel, BlockPos.Mutable blockPos, BlockState liquidBlockState, BiomeSnapshot biomes, BitSet airCarvingMask, BitSet liquidCarvingMask) {
         // Check if already carved
         int bitIndex = (blockPos.getX() & 0xF) | ((blockPos.getZ() & 0xF) << 4) | (blockPos.getY() << 8);
         if (airCarvingMask.get(bitIndex) || liquidCarvingMask.get(bitIndex)) {
@@ -195,7 +234,9 @@ public class RavineCarver extends CanyonWorldCarver {
         }
 
         // Determine if ravine is flooded at this location
-        boolean flooded = isFloodedRavinesEnabled && biomePos.apply(blockPos).getCategory() == Biome.Category.OCEAN;
+        int localX = blockPos.getX() & 0xF;
+        int localZ = blockPos.getZ() & 0xF;
+        boolean flooded = isFloodedRavinesEnabled && biomes.getCategory(localX, localZ) == Biome.Category.OCEAN;
         if (flooded) {
             // Cannot go above sea level
             if (blockPos.getY() >= seaLevel) {
@@ -204,17 +245,16 @@ public class RavineCarver extends CanyonWorldCarver {
         }
 
         // Don't dig in boundaries between flooded and unflooded openings.
-        float smoothAmpFloodFactor = BetterCavesUtils.getDistFactor(world, biomePos, blockPos, 2, flooded ? BetterCavesUtils.isNotOcean : BetterCavesUtils.isOcean);
-        if (smoothAmpFloodFactor <= .25f) { // Wall between flooded and normal caves.
+        if (biomes.isFloodWall(localX, localZ, flooded)) {
             return;
         }
 
         // Carve block
         if (flooded) {
-            CarverUtils.carveFloodedBlock(chunkIn, rand, blockPos, liquidBlockState, liquidAltitude, liquidCarvingMask);
+            CarverUtils.carveFloodedBlock(writer, biomes, rand, blockPos, liquidBlockState, liquidAltitude, liquidCarvingMask);
         }
         else {
-            CarverUtils.carveBlock(chunkIn, blockPos, liquidBlockState, this.liquidAltitude, this.isReplaceGravelEnabled, airCarvingMask);
+            CarverUtils.carveBlock(writer, biomes, blockPos, liquidBlockState, this.liquidAltitude, this.isReplaceGravelEnabled, airCarvingMask);
         }
     }
 
@@ -0,0 +1,163 @@
+package com.yungnickyoung.minecraft.bettercaves.world.carver.ravine;
+
+import net.minecraft.util.SharedSeedRandom;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.world.gen.carver.ConfiguredCarver;
+import net.minecraft.world.gen.feature.ProbabilityConfig;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Index from chunk position to the ravine segments carved in each chunk, built a region of chunks at a time.
+ * Vanilla checks every chunk within range of the chunk being carved for a ravine start, and simulates each ravine
+ * again for every chunk in range of it. Since ravines are rare, the starts in and around a region are instead found
+ * once, each ravine is simulated once, and its ellipsoids are indexed by the chunks they are carved in.
+ * Chunks that no ravine reaches skip ravine carving entirely.
+ *
+ * Regions are immutable once built, and the most recently used ones are kept in a bounded cache.
+ */
+public class RavineIndex {
+    /** Width of a region, in chunks */
+    private static final int REGION_SIZE = 32;
+
+    /** Maximum number of regions kept in the cache. 16 regions cover 16384 chunks. */
+    private static final int MAX_REGIONS = 16;
+
+    /** Maximum distance in chunks from the chunk starting a ravine at which the ravine is carved */
+    private static final int RANGE = 8;
+
+    private final ConfiguredCarver<ProbabilityConfig> configuredCarver;
+    private final RavineCarver ravineCarver;
+
+    /** Regions in access order, least recently used first. All access must be synchronized on the map. */
+    private final Map<Long, Region> regions = new LinkedHashMap<Long, Region>(MAX_REGIONS, .75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Region> eldest) {
+            return size() > MAX_REGIONS;
+        }
+    };
+
+    /**
+     * @param configuredCarver Decides which chunks start a ravine
+     * @param ravineCarver Simulates the ravines
+     */
+    public RavineIndex(ConfiguredCarver<ProbabilityConfig> configuredCarver, RavineCarver ravineCarver) {
+        this.configuredCarver = configuredCarver;
+        this.ravineCarver = ravineCarver;
+    }
+
+    /**
+     * @return the ravine segments carved in the given chunk, in carving order, or null if there are none
+     */
+    public Segment[] getSegments(long seed, int chunkX, int chunkZ) {
+        int regionX = Math.floorDiv(chunkX, REGION_SIZE);
+        int regionZ = Math.floorDiv(chunkZ, REGION_SIZE);
+        long key = ChunkPos.asLong(regionX, regionZ);
+
+        Region region;
+        synchronized (regions) {
+            region = regions.get(key);
+        }
+        if (region == null || region.seed != seed) {
+            // Built outside the lock so other threads aren't held up. Two threads may occasionally build
+            // the same region at once, in which case both get identical segments.
+            region = new Region(seed, regionX, regionZ);
+            synchronized (regions) {
+                regions.put(key, region);
+            }
+        }
+        return region.segmentsByChunk.get(ChunkPos.asLong(chunkX, chunkZ));
+    }
+
+    /**
+     * The part of a single ravine carved in a chunk.
+     */
+    public static class Segment {
+        private final Ravine ravine;
+        private final int[] ellipsoids;
+
+        private Segment(Ravine ravine, int[] ellipsoids) {
+            this.ravine = ravine;
+            this.ellipsoids = ellipsoids;
+        }
+
+        Ravine getRavine() {
+            return ravine;
+        }
+
+        /**
+         * @return indices of the ravine's ellipsoids carved in the chunk, in carving order
+         */
+        int[] getEllipsoids() {
+            return ellipsoids;
+        }
+    }
+
+    /**
+     * The ravine segments of every chunk in a square region.
+     */
+    private class Region {
+        /** World seed the region was built with */
+        private final long seed;
+
+        /** Segments carved in each chunk with any, keyed by chunk position */
+        private final Map<Long, Segment[]> segmentsByChunk = new HashMap<>();
+
+        private Region(long seed, int regionX, int regionZ) {
+            this.seed = seed;
+            int minChunkX = regionX * REGION_SIZE;
+            int minChunkZ = regionZ * REGION_SIZE;
+            int maxChunkX = minChunkX + REGION_SIZE - 1;
+            int maxChunkZ = minChunkZ + REGION_SIZE - 1;
+
+            // Ravine starts are visited in the same order vanilla visits them for each chunk, so the segments of
+            // each chunk end up in the order they would have been carved in
+            Map<Long, List<Segment>> segmentLists = new HashMap<>();
+            SharedSeedRandom random = new SharedSeedRandom();
+            for (int startChunkX = minChunkX - RANGE; startChunkX <= maxChunkX + RANGE; startChunkX++) {
+                for (int startChunkZ = minChunkZ - RANGE; startChunkZ <= maxChunkZ + RANGE; startChunkZ++) {
+                    random.setLargeFeatureSeed(seed, startChunkX, startChunkZ);
+                    if (!configuredCarver.shouldCarve(random, startChunkX, startChunkZ)) {
+                        continue;
+                    }
+                    Ravine ravine = ravineCarver.simulate(random, startChunkX, startChunkZ);
+
+                    // Only chunks in range of the start that the ravine gets close to can have segments
+                    double minX = Double.MAX_VALUE, maxX = -Double.MAX_VALUE;
+                    double minZ = Double.MAX_VALUE, maxZ = -Double.MAX_VALUE;
+                    for (int i = 0; i < ravine.size(); i++) {
+                        minX = Math.min(minX, ravine.getCenterX(i) - ravine.getXZRadius(i) * 2);
+                        maxX = Math.max(maxX, ravine.getCenterX(i) + ravine.getXZRadius(i) * 2);
+                        minZ = Math.min(minZ, ravine.getCenterZ(i) - ravine.getXZRadius(i) * 2);
+                        maxZ = Math.max(maxZ, ravine.getCenterZ(i) + ravine.getXZRadius(i) * 2);
+                    }
+                    int fromChunkX = Math.max(Math.max(startChunkX - RANGE, minChunkX), floorDiv16(minX - 24) - 1);
+                    int toChunkX = Math.min(Math.min(startChunkX + RANGE, maxChunkX), floorDiv16(maxX + 8) + 1);
+                    int fromChunkZ = Math.max(Math.max(startChunkZ - RANGE, minChunkZ), floorDiv16(minZ - 24) - 1);
+                    int toChunkZ = Math.min(Math.min(startChunkZ + RANGE, maxChunkZ), floorDiv16(maxZ + 8) + 1);
+
+                    for (int chunkX = fromChunkX; chunkX <= toChunkX; chunkX++) {
+                        for (int chunkZ = fromChunkZ; chunkZ <= toChunkZ; chunkZ++) {
+                            int[] ellipsoids = ravineCarver.getEllipsoids(ravine, chunkX, chunkZ);
+                            if (ellipsoids != null) {
+                                segmentLists.computeIfAbsent(ChunkPos.asLong(chunkX, chunkZ), k -> new ArrayList<>()).add(new Segment(ravine, ellipsoids));
+                            }
+                        }
+                    }
+                }
+            }
+
+            for (Map.Entry<Long, List<Segment>> entry : segmentLists.entrySet()) {
+                segmentsByChunk.put(entry.getKey(), entry.getValue().toArray(new Segment[0]));
+            }
+        }
+    }
+
+    private static int floorDiv16(double value) {
+        return (int) Math.floor(value / 16);
+    }
+}
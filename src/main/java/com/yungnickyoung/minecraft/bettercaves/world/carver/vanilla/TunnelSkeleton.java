@@ -0,0 +1,284 @@
+package com.yungnickyoung.minecraft.bettercaves.world.carver.vanilla;
+
+import net.minecraft.util.math.ChunkPos;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The tunnels and rooms started by a single chunk, as a list of the ellipsoids they may carve.
+ * Vanilla caves are carved by replaying the random walk of every tunnel system within range of a chunk, so without
+ * skeletons each system would be simulated once for each of the 289 chunks around it. Instead, a skeleton is
+ * simulated once and then indexed by the chunks each of its ellipsoids would be carved in.
+ *
+ * Whether an ellipsoid is carved in a chunk depends on the chunk - tunnels stop early once they can no longer reach
+ * the chunk being carved, and rooms stop once they have carved one ellipsoid near it. These checks are replayed for
+ * each chunk when the index is built, so each chunk gets exactly the ellipsoids the full simulation would carve in it.
+ * Skeletons are immutable once built.
+ */
+class TunnelSkeleton {
+    /** Skeleton of a chunk that doesn't start any tunnels */
+    static final TunnelSkeleton EMPTY = new Builder(0, false).build(0, 0, 0);
+
+    /** World seed and room setting the skeleton was simulated with */
+    private final long seed;
+    private final boolean addRooms;
+
+    /** Center and semi-axes of each ellipsoid, in the order they were carved by the simulation */
+    private final double[] centerX, centerY, centerZ;
+    private final double[] xzRadii, yRadii;
+
+    /** Indices of the ellipsoids carved in each chunk, keyed by chunk position */
+    private final Map<Long, int[]> ellipsoidsByChunk;
+
+    private TunnelSkeleton(Builder builder, Map<Long, int[]> ellipsoidsByChunk) {
+        this.seed = builder.seed;
+        this.addRooms = builder.addRooms;
+        this.centerX = Arrays.copyOf(builder.centerX, builder.size);
+        this.centerY = Arrays.copyOf(builder.centerY, builder.size);
+        this.centerZ = Arrays.copyOf(builder.centerZ, builder.size);
+        this.xzRadii = Arrays.copyOf(builder.xzRadii, builder.size);
+        this.yRadii = Arrays.copyOf(builder.yRadii, builder.size);
+        this.ellipsoidsByChunk = ellipsoidsByChunk;
+    }
+
+    /**
+     * @return true if this skeleton was simulated with the given seed and room setting
+     */
+    boolean matches(long seed, boolean addRooms) {
+        return this == EMPTY || (this.seed == seed && this.addRooms == addRooms);
+    }
+
+    /**
+     * @return true if no chunk has any ellipsoids carved in it
+     */
+    boolean isEmpty() {
+        return ellipsoidsByChunk.isEmpty();
+    }
+
+    /**
+     * @return indices of the ellipsoids carved in the given chunk, in carving order, or null if there are none
+     */
+    int[] getEllipsoids(int chunkX, int chunkZ) {
+        return ellipsoidsByChunk.get(ChunkPos.asLong(chunkX, chunkZ));
+    }
+
+    double getCenterX(int ellipsoid) {
+        return centerX[ellipsoid];
+    }
+
+    double getCenterY(int ellipsoid) {
+        return centerY[ellipsoid];
+    }
+
+    double getCenterZ(int ellipsoid) {
+        return centerZ[ellipsoid];
+    }
+
+    /**
+     * @return the semi-axis of the given ellipsoid along the x and z axes
+     */
+    double getXZRadius(int ellipsoid) {
+        return xzRadii[ellipsoid];
+    }
+
+    /**
+     * @return the semi-axis of the given ellipsoid along the y axis
+     */
+    double getYRadius(int ellipsoid) {
+        return yRadii[ellipsoid];
+    }
+
+    /**
+     * A single tunnel or room. Its ellipsoids are stored contiguously, and any branches are started after its last one.
+     */
+    static class Tunnel {
+        private final float width;
+        private final boolean isRoom;
+        private int firstEllipsoid;
+        private int numEllipsoids;
+        private final List<Tunnel> branches = new ArrayList<>(2);
+
+        private Tunnel(float width, boolean isRoom) {
+            this.width = width;
+            this.isRoom = isRoom;
+        }
+    }
+
+    /**
+     * Records the ellipsoids of a tunnel system as it is simulated.
+     */
+    static class Builder {
+        private final long seed;
+        private final boolean addRooms;
+        private final List<Tunnel> tunnels = new ArrayList<>();
+        private int size;
+        private double[] centerX = new double[64], centerY = new double[64], centerZ = new double[64];
+        private double[] xzRadii = new double[64], yRadii = new double[64];
+
+        /** Number of steps left in the ellipsoid's tunnel when it was carved */
+        private int[] distancesToEnd = new int[64];
+
+        Builder(long seed, boolean addRooms) {
+            this.seed = seed;
+            this.addRooms = addRooms;
+        }
+
+        /**
+         * Starts recording a tunnel.
+         * @param parent The tunnel this one branches off of, or null if it starts the chunk's tunnel system
+         * @param width Width of the tunnel
+         * @param isRoom Whether or not the tunnel is a room
+         */
+        Tunnel beginTunnel(Tunnel parent, float width, boolean isRoom) {
+            Tunnel tunnel = new Tunnel(width, isRoom);
+            tunnel.firstEllipsoid = size;
+            if (parent == null) {
+                tunnels.add(tunnel);
+            }
+            else {
+                parent.branches.add(tunnel);
+            }
+            return tunnel;
+        }
+
+        /**
+         * Records an ellipsoid the tunnel may carve. Must be called for the most recently started tunnel.
+         */
+        void addEllipsoid(Tunnel tunnel, double x, double y, double z, double xzRadius, double yRadius, int distanceToEnd) {
+            if (size == centerX.length) {
+                int capacity = size * 2;
+                centerX = Arrays.copyOf(centerX, capacity);
+                centerY = Arrays.copyOf(centerY, capacity);
+                centerZ = Arrays.copyOf(centerZ, capacity);
+                xzRadii = Arrays.copyOf(xzRadii, capacity);
+                yRadii = Arrays.copyOf(yRadii, capacity);
+                distancesToEnd = Arrays.copyOf(distancesToEnd, capacity);
+            }
+            centerX[size] = x;
+            centerY[size] = y;
+            centerZ[size] = z;
+            xzRadii[size] = xzRadius;
+            yRadii[size] = yRadius;
+            distancesToEnd[size] = distanceToEnd;
+            size++;
+            tunnel.numEllipsoids++;
+        }
+
+        /**
+         * Indexes the recorded ellipsoids by the chunks they are carved in.
+         * @param originChunkX The x-coordinate of the chunk that started the tunnel system
+         * @param originChunkZ The z-coordinate of the chunk that started the tunnel system
+         * @param range Maximum distance in chunks from the origin chunk at which the tunnel system is carved
+         */
+        TunnelSkeleton build(int originChunkX, int originChunkZ, int range) {
+            // Find every chunk close enough to an ellipsoid for it to be carved there
+            Set<Long> chunks = new HashSet<>();
+            for (int i = 0; i < size; i++) {
+                int minChunkX = Math.max(floorDiv16(centerX[i] - 24 - xzRadii[i] * 2) - 1, originChunkX - range);
+                int maxChunkX = Math.min(floorDiv16(centerX[i] + 8 + xzRadii[i] * 2) + 1, originChunkX + range);
+                int minChunkZ = Math.max(floorDiv16(centerZ[i] - 24 - xzRadii[i] * 2) - 1, originChunkZ - range);
+                int maxChunkZ = Math.min(floorDiv16(centerZ[i] + 8 + xzRadii[i] * 2) + 1, originChunkZ + range);
+                for (int chunkX = minChunkX; chunkX <= maxChunkX; chunkX++) {
+                    for (int chunkZ = minChunkZ; chunkZ <= maxChunkZ; chunkZ++) {
+                        if (isNearChunk(i, chunkX, chunkZ)) {
+                            chunks.add(ChunkPos.asLong(chunkX, chunkZ));
+                        }
+                    }
+                }
+            }
+
+            // Replay the simulation's checks for each of those chunks
+            Map<Long, int[]> ellipsoidsByChunk = new HashMap<>();
+            int[] carved = new int[size];
+            for (long chunk : chunks) {
+                int chunkX = ChunkPos.getX(chunk);
+                int chunkZ = ChunkPos.getZ(chunk);
+                int numCarved = collectEllipsoids(chunkX, chunkZ, carved);
+                if (numCarved > 0) {
+                    ellipsoidsByChunk.put(chunk, Arrays.copyOf(carved, numCarved));
+                }
+            }
+
+            return new TunnelSkeleton(this, ellipsoidsByChunk);
+        }
+
+        /**
+         * Adds the ellipsoids carved in the given chunk to the given array, stopping each tunnel where the
+         * simulation would have when carving that chunk. Tunnels are visited from an explicit stack in the
+         * order they were simulated, each followed by its branches.
+         * @return the number of ellipsoids added
+         */
+        private int collectEllipsoids(int chunkX, int chunkZ, int[] carved) {
+            // Center block of the chunk being carved
+            double chunkBlockX = chunkX * 16 + 8;
+            double chunkBlockZ = chunkZ * 16 + 8;
+            int numCarved = 0;
+
+            Deque<Tunnel> pending = new ArrayDeque<>();
+            for (int t = tunnels.size() - 1; t >= 0; t--) {
+                pending.push(tunnels.get(t));
+            }
+
+            while (!pending.isEmpty()) {
+                Tunnel tunnel = pending.pop();
+                double d7 = tunnel.width + 2.0F + 16.0F;
+                boolean stopped = false;
+
+                for (int i = tunnel.firstEllipsoid; i < tunnel.firstEllipsoid + tunnel.numEllipsoids; i++) {
+                    double offsetX = centerX[i] - chunkBlockX;
+                    double offsetZ = centerZ[i] - chunkBlockZ;
+                    double distanceToEnd = distancesToEnd[i];
+
+                    // The tunnel can no longer reach the chunk
+                    if (offsetX * offsetX + offsetZ * offsetZ - distanceToEnd * distanceToEnd > d7 * d7) {
+                        stopped = true;
+                        break;
+                    }
+
+                    if (isNearChunk(i, chunkX, chunkZ)) {
+                        carved[numCarved++] = i;
+
+                        // Rooms only carve a single ellipsoid in each chunk
+                        if (tunnel.isRoom) {
+                            stopped = true;
+                            break;
+                        }
+                    }
+                }
+
+                // Branches start where the tunnel ends, so a tunnel that stopped early never reaches them
+                if (!stopped) {
+                    for (int b = tunnel.branches.size() - 1; b >= 0; b--) {
+                        pending.push(tunnel.branches.get(b));
+                    }
+                }
+            }
+            return numCarved;
+        }
+
+        /**
+         * @return true if the given ellipsoid is close enough to the given chunk to be carved in it
+         */
+        private boolean isNearChunk(int ellipsoid, int chunkX, int chunkZ) {
+            double chunkBlockX = chunkX * 16 + 8;
+            double chunkBlockZ = chunkZ * 16 + 8;
+            double x = centerX[ellipsoid];
+            double z = centerZ[ellipsoid];
+            double xzRadius = xzRadii[ellipsoid];
+            return x >= chunkBlockX - 16.0D - xzRadius * 2.0D && z >= chunkBlockZ - 16.0D - xzRadius * 2.0D
+                && x <= chunkBlockX + 16.0D + xzRadius * 2.0D && z <= chunkBlockZ + 16.0D + xzRadius * 2.0D;
+        }
+
+        private static int floorDiv16(double value) {
+            return (int) Math.floor(value / 16);
+        }
+    }
+}
@@ -2,24 +2,19 @@ package com.yungnickyoung.minecraft.bettercaves.world.carver.vanilla;
 
 import com.yungnickyoung.minecraft.bettercaves.BetterCaves;
 import com.yungnickyoung.minecraft.bettercaves.util.BetterCavesUtils;
+import com.yungnickyoung.minecraft.bettercaves.world.carver.BiomeSnapshot;
 import com.yungnickyoung.minecraft.bettercaves.world.carver.CarverUtils;
 import com.yungnickyoung.minecraft.bettercaves.world.carver.ICarver;
+import com.yungnickyoung.minecraft.bettercaves.world.carver.SectionWriter;
 import net.minecraft.block.BlockState;
-import net.minecraft.util.Direction;
-import net.minecraft.util.math.BlockPos;
 import net.minecraft.util.math.MathHelper;
-import net.minecraft.world.ISeedReader;
 import net.minecraft.world.IWorld;
 import net.minecraft.world.biome.Biome;
-import net.minecraft.world.chunk.IChunk;
 
-import javax.annotation.Nonnull;
-import java.util.Arrays;
+import java.util.ArrayDeque;
 import java.util.BitSet;
+import java.util.Deque;
 import java.util.Random;
-import java.util.function.Function;
-
-import static com.yungnickyoung.minecraft.bettercaves.util.BetterCavesUtils.isPosInWorld;
 
 /**
  * Re-implements vanilla world carver, but with a few modifications for Better Caves config options.
@@ -40,8 +35,6 @@ public class VanillaCaveCarver implements ICarver {
         isDebugVisualizerEnabled,
         isReplaceGravelEnabled,
         isFloodedUndergroundEnabled;
-    private Random rand = new Random();
-    private ISeedReader world;
 
     private int range = 8;
 
@@ -64,73 +57,72 @@ public class VanillaCaveCarver implements ICarver {
     }
 
     /**
-     * Calls recursiveGenerate() on all chunks within a certain square range (default 8) of this chunk.
+     * Simulates the tunnels started by the given chunk into a skeleton. Skeletons are cached and shared by every
+     * chunk in range of them by {@link VanillaCaveCarverGroup}.
      */
-    public void generate(ISeedReader worldIn, int chunkX, int chunkZ, IChunk primer, boolean addRooms, BlockState[][] liquidBlocks, Function<BlockPos, Biome> biomePos, boolean[][] validPositions, BitSet airCarvingMask, BitSet liquidCarvingMask) {
-        int chunkRadius = this.range;
-        this.world = worldIn;
-        this.rand.setSeed(worldIn.getSeed());
-        long j = this.rand.nextLong();
-        long k = this.rand.nextLong();
-        for (int currChunkX = chunkX - chunkRadius; currChunkX <= chunkX + chunkRadius; ++currChunkX) {
-            for (int currChunkZ = chunkZ - chunkRadius; currChunkZ <= chunkZ + chunkRadius; ++currChunkZ) {
-                long j1 = (long) currChunkX * j;
-                long k1 = (long) currChunkZ * k;
-                this.rand.setSeed(j1 ^ k1 ^ worldIn.getSeed());
-                this.recursiveGenerate(worldIn, currChunkX, currChunkZ, chunkX, chunkZ, primer, addRooms, liquidBlocks, biomePos, validPositions, airCarvingMask, liquidCarvingMask);
-            }
-        }
-    }
-
-    public void generate(ISeedReader worldIn, int x, int z, IChunk primer, boolean addRooms, BlockState[][] liquidBlocks, Function<BlockPos, Biome> biomePos, BitSet airCarvingMask, BitSet liquidCarvingMask) {
-        boolean[][] validPositions = new boolean[16][16];
-        for (boolean[] row : validPositions)
-            Arrays.fill(row, true);
-        generate(worldIn, x, z, primer, addRooms, liquidBlocks, biomePos, validPositions, airCarvingMask, liquidCarvingMask);
+    TunnelSkeleton simulate(long seed, int chunkX, int chunkZ, boolean addRooms) {
+        Random random = new Random(seed);
+        long j = random.nextLong();
+        long k = random.nextLong();
+        long j1 = (long) chunkX * j;
+        long k1 = (long) chunkZ * k;
+        random.setSeed(j1 ^ k1 ^ seed);
+
+        TunnelSkeleton.Builder builder = new TunnelSkeleton.Builder(seed, addRooms);
+        this.recursiveGenerate(random, chunkX, chunkZ, addRooms, builder);
+        TunnelSkeleton skeleton = builder.build(chunkX, chunkZ, this.range);
+        return skeleton.isEmpty() ? TunnelSkeleton.EMPTY : skeleton;
     }
 
     /**
-     * Calls addTunnel and addRoom (wrapper for addTunnel) for this chunk.
+     * Calls addTunnel and addRoom (wrapper for addTunnel) for this chunk, recording the ellipsoids they would carve.
      * Note that each call to this function (and subsequently addTunnel) will be done with the same rand seed.
-     * This means that when a chunk is checked multiple times by different neighbor chunks, each time it will be processed
-     * the same way, ensuring the tunnels are always consistent and connecting.
+     * This means that the tunnels are always the same no matter which neighbor chunk is being carved,
+     * ensuring they are always consistent and connecting.
      */
-    private void recursiveGenerate(IWorld worldIn, int chunkX, int chunkZ, int originalChunkX, int originalChunkZ, @Nonnull IChunk primer, boolean addRooms, BlockState[][] liquidBlocks, Function<BlockPos, Biome> biomePos, boolean[][] validPositions, BitSet airCarvingMask, BitSet liquidCarvingMask) {
-        int numAttempts = this.rand.nextInt(this.rand.nextInt(this.rand.nextInt(15) + 1) + 1);
+    private void recursiveGenerate(Random rand, int chunkX, int chunkZ, boolean addRooms, TunnelSkeleton.Builder builder) {
+        int numAttempts = rand.nextInt(rand.nextInt(rand.nextInt(15) + 1) + 1);
 
-        if (this.rand.nextInt(100) > this.density) {
+        if (rand.nextInt(100) > this.density) {
             numAttempts = 0;
         }
 
         for (int i = 0; i < numAttempts; ++i) {
-            double caveStartX = chunkX * 16 + this.rand.nextInt(16);
-            double caveStartY = this.rand.nextInt(this.topY - this.bottomY) + this.bottomY;
-            double caveStartZ = chunkZ * 16 + this.rand.nextInt(16);
+            double caveStartX = chunkX * 16 + rand.nextInt(16);
+            double caveStartY = rand.nextInt(this.topY - this.bottomY) + this.bottomY;
+            double caveStartZ = chunkZ * 16 + rand.nextInt(16);
 
             int numAddTunnelCalls = 1;
 
-            if (addRooms && this.rand.nextInt(4) == 0) {
-                this.addRoom(worldIn, this.rand.nextLong(), originalChunkX, originalChunkZ, primer, caveStartX, caveStartY, caveStartZ, liquidBlocks, biomePos, validPositions, airCarvingMask, liquidCarvingMask);
-                numAddTunnelCalls += this.rand.nextInt(4);
+            if (addRooms && rand.nextInt(4) == 0) {
+                this.addRoom(rand, rand.nextLong(), builder, caveStartX, caveStartY, caveStartZ);
+                numAddTunnelCalls += rand.nextInt(4);
             }
 
             for (int j = 0; j < numAddTunnelCalls; ++j) {
-                float yaw = this.rand.nextFloat() * ((float) Math.PI * 2F);
-                float pitch = (this.rand.nextFloat() - 0.5F) * 2.0F / 8.0F;
-                float width = this.rand.nextFloat() * 2.0F + this.rand.nextFloat();
+                float yaw = rand.nextFloat() * ((float) Math.PI * 2F);
+                float pitch = (rand.nextFloat() - 0.5F) * 2.0F / 8.0F;
+                float width = rand.nextFloat() * 2.0F + rand.nextFloat();
 
                 // Chance of wider caves.
                 // Although not actually related to adding rooms, I perform an addRoom check here
                 // to avoid the chance of really large caves when generating surface caves.
-                if (addRooms && this.rand.nextInt(10) == 0) {
-                    width *= this.rand.nextFloat() * this.rand.nextFloat() * 3.0F + 1.0F;
+                if (addRooms && rand.nextInt(10) == 0) {
+                    width *= rand.nextFloat() * rand.nextFloat() * 3.0F + 1.0F;
                 }
 
-                this.addTunnel(worldIn, this.rand.nextLong(), originalChunkX, originalChunkZ, primer, caveStartX, caveStartY, caveStartZ, width, yaw, pitch, 0, 0, 1.0D, liquidBlocks, biomePos, validPositions, airCarvingMask, liquidCarvingMask);
+                this.addTunnel(rand.nextLong(), builder, null, caveStartX, caveStartY, caveStartZ, width, yaw, pitch, 0, 0, 1.0D);
             }
         }
     }
 
+    /**
+     * @return the maximum distance in chunks from a chunk at which its tunnels are carved
+     */
+    int getRange() {
+        return this.range;
+    }
+
     public int getPriority() {
         return this.priority;
     }
@@ -141,17 +133,42 @@ public class VanillaCaveCarver implements ICarver {
     }
 
 
-    private void addRoom(IWorld worldIn, long seed, int originChunkX, int originChunkZ, IChunk primer, double caveStartX, double caveStartY, double caveStartZ, BlockState[][] liquidBlocks, Function<BlockPos, Biome> biomePos, boolean[][] validPositions, BitSet airCarvingMask, BitSet liquidCarvingMask) {
-        this.addTunnel(worldIn, seed, originChunkX, originChunkZ, primer, caveStartX, caveStartY, caveStartZ, 1.0F + this.rand.nextFloat() * 6.0F, 0.0F, 0.0F, -1, -1, 0.5D, liquidBlocks, biomePos, validPositions, airCarvingMask, liquidCarvingMask);
+    private void addRoom(Random rand, long seed, TunnelSkeleton.Builder builder, double caveStartX, double caveStartY, double caveStartZ) {
+        this.addTunnel(seed, builder, null, caveStartX, caveStartY, caveStartZ, 1.0F + rand.nextFloat() * 6.0F, 0.0F, 0.0F, -1, -1, 0.5D);
     }
 
-    protected void addTunnel(IWorld worldIn, long seed, int originChunkX, int originChunkZ, IChunk chunk, double caveStartX, double caveStartY, double caveStartZ, float width, float yaw, float pitch, int startCounter, int endCounter, double heightModifier, BlockState[][] liquidBlocks, Function<BlockPos, Biome> biomePos, boolean[][] validPositions, BitSet airCarvingMask, BitSet liquidCarvingMask) {
-        BlockState liquidBlock;
-        Random random = new Random(seed);
+    /**
+     * Simulates a tunnel and its branches, recording each ellipsoid they may carve.
+     * Whether or not a tunnel gets close enough to a given chunk to carve it is left to the skeleton,
+     * since the simulation no longer depends on the chunk being carved.
+     *
+     * Branches are simulated from an explicit stack rather than recursively, in the same depth-first order.
+     * Each tunnel walks with its own random, so drawing the parameters of both branches up front consumes
+     * the parent's random exactly as the recursive version did.
+     * @param parent The tunnel this one branches off of, or null if it is started directly by recursiveGenerate
+     */
+    protected void addTunnel(long seed, TunnelSkeleton.Builder builder, TunnelSkeleton.Tunnel parent, double caveStartX, double caveStartY, double caveStartZ, float width, float yaw, float pitch, int startCounter, int endCounter, double heightModifier) {
+        Deque<TunnelStart> pending = new ArrayDeque<>();
+        pending.push(new TunnelStart(seed, parent, caveStartX, caveStartY, caveStartZ, width, yaw, pitch, startCounter, endCounter, heightModifier));
+        while (!pending.isEmpty()) {
+            walkTunnel(pending.pop(), builder, pending);
+        }
+    }
 
-        // Center block of the origin chunk
-        double originBlockX = (originChunkX * 16 + 8);
-        double originBlockZ = (originChunkZ * 16 + 8);
+    /**
+     * Walks a single tunnel, recording its ellipsoids and pushing any branches it splits into onto the stack.
+     */
+    private void walkTunnel(TunnelStart start, TunnelSkeleton.Builder builder, Deque<TunnelStart> pending) {
+        Random random = new Random(start.seed);
+        double caveStartX = start.x;
+        double caveStartY = start.y;
+        double caveStartZ = start.z;
+        float width = start.width;
+        float yaw = start.yaw;
+        float pitch = start.pitch;
+        int startCounter = start.startCounter;
+        int endCounter = start.endCounter;
+        double heightModifier = start.heightModifier;
 
         // Variables to slightly change the yaw/pitch for each iteration in the while loop below.
         float yawModifier = 0.0F;
@@ -177,6 +194,8 @@ public class VanillaCaveCarver implements ICarver {
             comesFromRoom = true;
         }
 
+        TunnelSkeleton.Tunnel tunnel = builder.beginTunnel(start.parent, width, comesFromRoom);
+
         int randomCounterValue = random.nextInt(endCounter / 2) + endCounter / 4;
 
         // Loops one block at a time to the endCounter (about 6-7 chunks away on average).
@@ -212,104 +231,117 @@ public class VanillaCaveCarver implements ICarver {
             yawModifier = yawModifier + (random.nextFloat() - random.nextFloat()) * random.nextFloat() * 4.0F;
 
             if (!comesFromRoom && startCounter == randomCounterValue && width > 1.0F && endCounter > 0) {
-                this.addTunnel(worldIn, random.nextLong(), originChunkX, originChunkZ, chunk, caveStartX, caveStartY, caveStartZ, random.nextFloat() * 0.5F + 0.5F, yaw - ((float) Math.PI / 2F), pitch / 3.0F, startCounter, endCounter, 1.0D, liquidBlocks, biomePos, validPositions, airCarvingMask, liquidCarvingMask);
-                this.addTunnel(worldIn, random.nextLong(), originChunkX, originChunkZ, chunk, caveStartX, caveStartY, caveStartZ, random.nextFloat() * 0.5F + 0.5F, yaw + ((float) Math.PI / 2F), pitch / 3.0F, startCounter, endCounter, 1.0D, liquidBlocks, biomePos, validPositions, airCarvingMask, liquidCarvingMask);
+                TunnelStart left = new TunnelStart(random.nextLong(), tunnel, caveStartX, caveStartY, caveStartZ, random.nextFloat() * 0.5F + 0.5F, yaw - ((float) Math.PI / 2F), pitch / 3.0F, startCounter, endCounter, 1.0D);
+                TunnelStart right = new TunnelStart(random.nextLong(), tunnel, caveStartX, caveStartY, caveStartZ, random.nextFloat() * 0.5F + 0.5F, yaw + ((float) Math.PI / 2F), pitch / 3.0F, startCounter, endCounter, 1.0D);
+
+                // Pushed in reverse so that the left branch, and everything it branches into, is walked first
+                pending.push(right);
+                pending.push(left);
                 return;
             }
 
             if (comesFromRoom || random.nextInt(4) != 0) {
-                double caveStartXOffsetFromCenter = caveStartX - originBlockX; // Number of blocks from current caveStartX to center of origin chunk
-                double caveStartZOffsetFromCenter = caveStartZ - originBlockZ; // Number of blocks from current caveStartZ to center of origin chunk
-                double distanceToEnd = endCounter - startCounter;
-                double d7 = width + 2.0F + 16.0F;
-
-                // I think this prevents caves from generating too far from the origin chunk
-                if (caveStartXOffsetFromCenter * caveStartXOffsetFromCenter + caveStartZOffsetFromCenter * caveStartZOffsetFromCenter - distanceToEnd * distanceToEnd > d7 * d7) {
-                    return;
-                }
+                builder.addEllipsoid(tunnel, caveStartX, caveStartY, caveStartZ, xzOffset, yOffset, endCounter - startCounter);
+            }
+            startCounter++;
+        }
+    }
 
-                // Only continue if cave start is close enough to origin
-                if (caveStartX >= originBlockX - 16.0D - xzOffset * 2.0D && caveStartZ >= originBlockZ - 16.0D - xzOffset * 2.0D && caveStartX <= originBlockX + 16.0D + xzOffset * 2.0D && caveStartZ <= originBlockZ + 16.0D + xzOffset * 2.0D) {
-                    int minX = MathHelper.floor(caveStartX - xzOffset) - originChunkX * 16 - 1;
-                    int minY = MathHelper.floor(caveStartY - yOffset) - 1;
-                    int minZ = MathHelper.floor(caveStartZ - xzOffset) - originChunkZ * 16 - 1;
-                    int maxX = MathHelper.floor(caveStartX + xzOffset) - originChunkX * 16 + 1;
-                    int maxY = MathHelper.floor(caveStartY + yOffset) + 1;
-                    int maxZ = MathHelper.floor(caveStartZ + xzOffset) - originChunkZ * 16 + 1;
-
-                    if (minX < 0) {
-                        minX = 0;
-                    }
+    /**
+     * Carves a single ellipsoid of a tunnel skeleton into the chunk being carved.
+     * @param rand Random used to place magma and obsidian in flooded caves, seeded for the chunk being carved.
+     * @param validBounds Bounding box of the valid positions, as {minX, maxX, minZ, maxZ} in local coordinates (inclusive).
+     *                    Columns outside of it are never carved, so the ellipsoid is clipped to it.
+     */
+    void carveEllipsoid(IWorld worldIn, Random rand, int originChunkX, int originChunkZ, SectionWriter writer, TunnelSkeleton skeleton, int ellipsoid, BlockState[][] liquidBlocks, BiomeSnapshot biomes, boolean[][] validPositions, int[] validBounds, BitSet airCarvingMask, BitSet liquidCarvingMask) {
+        BlockState liquidBlock;
+        double caveStartX = skeleton.getCenterX(ellipsoid);
+        double caveStartY = skeleton.getCenterY(ellipsoid);
+        double caveStartZ = skeleton.getCenterZ(ellipsoid);
+        double xzOffset = skeleton.getXZRadius(ellipsoid);
+        double yOffset = skeleton.getYRadius(ellipsoid);
+
+        int minX = MathHelper.floor(caveStartX - xzOffset) - originChunkX * 16 - 1;
+        int minY = MathHelper.floor(caveStartY - yOffset) - 1;
+        int minZ = MathHelper.floor(caveStartZ - xzOffset) - originChunkZ * 16 - 1;
+        int maxX = MathHelper.floor(caveStartX + xzOffset) - originChunkX * 16 + 1;
+        int maxY = MathHelper.floor(caveStartY + yOffset) + 1;
+        int maxZ = MathHelper.floor(caveStartZ + xzOffset) - originChunkZ * 16 + 1;
+
+        if (minX < 0) {
+            minX = 0;
+        }
 
-                    if (maxX > 16) {
-                        maxX = 16;
-                    }
+        if (maxX > 16) {
+            maxX = 16;
+        }
 
-                    if (minY < 1) {
-                        minY = 1;
-                    }
+        if (minY < 1) {
+            minY = 1;
+        }
 
-                    if (maxY > 248) {
-                        maxY = 248;
-                    }
+        if (maxY > 248) {
+            maxY = 248;
+        }
 
-                    if (minZ < 0) {
-                        minZ = 0;
-                    }
+        if (minZ < 0) {
+            minZ = 0;
+        }
 
-                    if (maxZ > 16) {
-                        maxZ = 16;
-                    }
+        if (maxZ > 16) {
+            maxZ = 16;
+        }
 
-                    for (int currX = minX; currX < maxX; ++currX) {
-                        // Distance along the x-axis from the center (caveStart) of this ellipsoid.
-                        // You can think of this value as (x/a), where a is the length of the ellipsoid's semi-axis in the x direction.
-                        double xAxisDist = ((double) (currX + originChunkX * 16) + 0.5D - caveStartX) / xzOffset;
-
-                        for (int currZ = minZ; currZ < maxZ; ++currZ) {
-                            // Distance along the z-axis from the center (caveStart) of this ellipsoid.
-                            // You can think of this value as (z/b), where b is the length of the ellipsoid's semi-axis in the z direction (same as a in this case).
-                            double zAxisDist = ((double) (currZ + originChunkZ * 16) + 0.5D - caveStartZ) / xzOffset;
-
-                            // Skip column if position not marked as valid
-                            if (!validPositions[currX][currZ])
-                                continue;
-
-                            // Only operate on points within ellipse on XZ axis. Avoids unnecessary computation along y axis
-                            if (xAxisDist * xAxisDist + zAxisDist * zAxisDist < 1.0D) {
-                                for (int currY = maxY; currY > minY; --currY) {
-                                    // Distance along the y-axis from the center (caveStart) of this ellipsoid.
-                                    // You can think of this value as (y/c), where c is the length of the ellipsoid's semi-axis in the y direction.
-                                    double yAxisDist = ((double) (currY - 1) + 0.5D - caveStartY) / yOffset;
-
-                                    // Only operate on points within the ellipsoid.
-                                    // This conditional is validating the current coordinate against the equation of the ellipsoid, that is,
-                                    // (x/a)^2 + (z/b)^2 + (y/c)^2 <= 1.
-                                    if (yAxisDist > -0.7D && xAxisDist * xAxisDist + yAxisDist * yAxisDist + zAxisDist * zAxisDist < 1.0D) {
-                                        liquidBlock = liquidBlocks[BetterCavesUtils.getLocal(currX)][BetterCavesUtils.getLocal(currZ)];
-                                        if (this.isDebugVisualizerEnabled)
-                                            CarverUtils.debugCarveBlock(chunk, currX, currY, currZ, debugBlock, true);
-                                        else
-                                            digBlock(worldIn, chunk, originChunkX, originChunkZ, currX, currY, currZ, liquidBlock, biomePos, airCarvingMask, liquidCarvingMask);
-                                    } else {
-                                        if (this.isDebugVisualizerEnabled)
-                                            CarverUtils.debugCarveBlock(chunk, currX, currY, currZ, debugBlock, false);
-                                    }
-                                }
-                            }
-                        }
-                    }
+        // Skip straight to the valid columns, or skip the ellipsoid entirely if it misses all of them
+        minX = Math.max(minX, validBounds[0]);
+        maxX = Math.min(maxX, validBounds[1] + 1);
+        minZ = Math.max(minZ, validBounds[2]);
+        maxZ = Math.min(maxZ, validBounds[3] + 1);
+        if (minX >= maxX || minZ >= maxZ) {
+            return;
+        }
 
-                    if (comesFromRoom) {
-                        break;
+        for (int currX = minX; currX < maxX; ++currX) {
+            // Distance along the x-axis from the center (caveStart) of this ellipsoid.
+            // You can think of this value as (x/a), where a is the length of the ellipsoid's semi-axis in the x direction.
+            double xAxisDist = ((double) (currX + originChunkX * 16) + 0.5D - caveStartX) / xzOffset;
+
+            for (int currZ = minZ; currZ < maxZ; ++currZ) {
+                // Distance along the z-axis from the center (caveStart) of this ellipsoid.
+                // You can think of this value as (z/b), where b is the length of the ellipsoid's semi-axis in the z direction (same as a in this case).
+                double zAxisDist = ((double) (currZ + originChunkZ * 16) + 0.5D - caveStartZ) / xzOffset;
+
+                // Skip column if position not marked as valid
+                if (!validPositions[currX][currZ])
+                    continue;
+
+                // Only operate on points within ellipse on XZ axis. Avoids unnecessary computation along y axis
+                if (xAxisDist * xAxisDist + zAxisDist * zAxisDist < 1.0D) {
+                    for (int currY = maxY; currY > minY; --currY) {
+                        // Distance along the y-axis from the center (caveStart) of this ellipsoid.
+                        // You can think of this value as (y/c), where c is the length of the ellipsoid's semi-axis in the y direction.
+                        double yAxisDist = ((double) (currY - 1) + 0.5D - caveStartY) / yOffset;
+
+                        // Only operate on points within the ellipsoid.
+                        // This conditional is validating the current coordinate against the equation of the ellipsoid, that is,
+                        // (x/a)^2 + (z/b)^2 + (y/c)^2 <= 1.
+                        if (yAxisDist > -0.7D && xAxisDist * xAxisDist + yAxisDist * yAxisDist + zAxisDist * zAxisDist < 1.0D) {
+                            liquidBlock = liquidBlocks[BetterCavesUtils.getLocal(currX)][BetterCavesUtils.getLocal(currZ)];
+                            if (this.isDebugVisualizerEnabled)
+                                CarverUtils.debugCarveBlock(writer, currX, currY, currZ, debugBlock, true);
+                            else
+                                digBlock(worldIn, writer, rand, originChunkX, originChunkZ, currX, currY, currZ, liquidBlock, biomes, airCarvingMask, liquidCarvingMask);
+                        } else {
+                            if (this.isDebugVisualizerEnabled)
+                                CarverUtils.debugCarveBlock(writer, currX, currY, currZ, debugBlock, false);
+                        }
                     }
                 }
             }
-            startCounter++;
         }
     }
 
-    private void digBlock(IWorld worldIn, IChunk chunkIn, int chunkX, int chunkZ, int localX, int y, int localZ, BlockState liquidBlockState, Function<BlockPos, Biome> biomePos, BitSet airCarvingMask, BitSet liquidCarvingMask) {
+    private void digBlock(IWorld worldIn, SectionWriter writer, Random rand, int chunkX, int chunkZ, int localX, int y, int localZ, BlockState liquidBlockState, BiomeSnapshot biomes, BitSet airCarvingMask, BitSet liquidCarvingMask) {
         // Don't carve space between water and lava regions
         if (y <= liquidAltitude && liquidBlockState == null) {
             return;
@@ -321,11 +353,11 @@ public class VanillaCaveCarver implements ICarver {
             return;
         }
 
-        BlockPos blockPos = new BlockPos(chunkX * 16 + localX, y, chunkZ * 16 + localZ);
-        BlockPos.Mutable mutableColPos = blockPos.toMutable();
+        int x = chunkX * 16 + localX;
+        int z = chunkZ * 16 + localZ;
 
         // Determine if cave is flooded at this location
-        boolean flooded = isFloodedUndergroundEnabled && !isDebugVisualizerEnabled && biomePos.apply(mutableColPos).getCategory() == Biome.Category.OCEAN;
+        boolean flooded = isFloodedUndergroundEnabled && !isDebugVisualizerEnabled && biomes.getCategory(localX, localZ) == Biome.Category.OCEAN;
         if (flooded) {
             // Cannot go above sea level
             if (y >= worldIn.getSeaLevel()) {
@@ -333,26 +365,43 @@ public class VanillaCaveCarver implements ICarver {
             }
 
             // Don't dig boundaries between flooded and unflooded openings.
-            if (
-                (isPosInWorld(mutableColPos.setPos(blockPos).move(Direction.EAST), world) && biomePos.apply(mutableColPos.setPos(blockPos).move(Direction.EAST)).getCategory() != Biome.Category.OCEAN) ||
-                (isPosInWorld(mutableColPos.setPos(blockPos).move(Direction.WEST), world) && biomePos.apply(mutableColPos.setPos(blockPos).move(Direction.WEST)).getCategory() != Biome.Category.OCEAN) ||
-                (isPosInWorld(mutableColPos.setPos(blockPos).move(Direction.NORTH), world) && biomePos.apply(mutableColPos.setPos(blockPos).move(Direction.NORTH)).getCategory() != Biome.Category.OCEAN) ||
-                (isPosInWorld(mutableColPos.setPos(blockPos).move(Direction.SOUTH), world) && biomePos.apply(mutableColPos.setPos(blockPos).move(Direction.SOUTH)).getCategory() != Biome.Category.OCEAN)
-            ) {
+            if (biomes.isFloodWall(localX, localZ, true)) {
                 return;
             }
         }
 
         // Carve block
         if (flooded) {
-            CarverUtils.carveFloodedBlock(chunkIn, rand, blockPos.toMutable(), liquidBlockState, liquidAltitude, liquidCarvingMask);
+            CarverUtils.carveFloodedBlock(writer, biomes, rand, x, y, z, liquidBlockState, liquidAltitude, liquidCarvingMask);
         }
         else {
-            CarverUtils.carveBlock(chunkIn, blockPos, liquidBlockState, this.liquidAltitude, this.isReplaceGravelEnabled, airCarvingMask);
+            CarverUtils.carveBlock(writer, biomes, x, y, z, liquidBlockState, this.liquidAltitude, this.isReplaceGravelEnabled, airCarvingMask);
         }
     }
 
-    public void setWorld(ISeedReader worldIn) {
-        this.world = worldIn;
+    /**
+     * Starting state of a tunnel waiting to be walked.
+     */
+    private static class TunnelStart {
+        private final long seed;
+        private final TunnelSkeleton.Tunnel parent;
+        private final double x, y, z;
+        private final float width, yaw, pitch;
+        private final int startCounter, endCounter;
+        private final double heightModifier;
+
+        private TunnelStart(long seed, TunnelSkeleton.Tunnel parent, double x, double y, double z, float width, float yaw, float pitch, int startCounter, int endCounter, double heightModifier) {
+            this.seed = seed;
+            this.parent = parent;
+            this.x = x;
+            this.y = y;
+            this.z = z;
+            this.width = width;
+            this.yaw = yaw;
+            this.pitch = pitch;
+            this.startCounter = startCounter;
+            this.endCounter = endCounter;
+            this.heightModifier = heightModifier;
+        }
     }
 }
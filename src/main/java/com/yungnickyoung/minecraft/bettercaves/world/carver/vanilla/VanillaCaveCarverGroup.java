@@ -0,0 +1,181 @@
+package com.yungnickyoung.minecraft.bettercaves.world.carver.vanilla;
+
+import com.yungnickyoung.minecraft.bettercaves.world.carver.BiomeSnapshot;
+import com.yungnickyoung.minecraft.bettercaves.world.carver.SectionWriter;
+import net.minecraft.block.BlockState;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.world.ISeedReader;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Carves the tunnels of several vanilla cave carvers with a single sweep over the chunks in range of the chunk
+ * being carved, e.g. regional vanilla caves and surface caves. Each carver keeps its own altitude range, density and
+ * room setting, and is only carved in the columns marked as valid for it.
+ *
+ * Skeletons of all carvers in the group are cached together by the chunk that starts them, so each chunk in range
+ * is looked up once for the whole group rather than once per carver.
+ */
+public class VanillaCaveCarverGroup {
+    /** Maximum number of chunks whose skeletons are kept in the cache. 2048 chunks cover a square of about 45x45 chunks. */
+    private static final int MAX_SKELETONS = 2048;
+
+    /** Carvers in the group, in carving order */
+    private final List<VanillaCaveCarver> carvers = new ArrayList<>();
+
+    /** Whether or not each carver adds rooms */
+    private final List<Boolean> addRooms = new ArrayList<>();
+
+    /**
+     * Skeletons of each carver for recently carved chunks in access order, least recently used first.
+     * Skeletons are simulated lazily, so a carver's slot is null until a chunk in range of it is carved by that carver.
+     * Cached arrays are replaced rather than modified. All access must be synchronized on the map.
+     */
+    private final Map<Long, TunnelSkeleton[]> skeletons = new LinkedHashMap<Long, TunnelSkeleton[]>(MAX_SKELETONS, .75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, TunnelSkeleton[]> eldest) {
+            return size() > MAX_SKELETONS;
+        }
+    };
+
+    /**
+     * Adds a carver to the group. Carvers are carved in the order they are added.
+     * Must be called before any chunks are carved, since it is not synchronized with worldgen threads.
+     * @param carver The carver to add
+     * @param addRooms Whether or not the carver adds rooms
+     * @return the carver's index, used to pass it its valid positions when carving
+     */
+    public int add(VanillaCaveCarver carver, boolean addRooms) {
+        carvers.add(carver);
+        this.addRooms.add(addRooms);
+        return carvers.size() - 1;
+    }
+
+    /**
+     * @return the number of carvers in the group
+     */
+    public int size() {
+        return carvers.size();
+    }
+
+    /**
+     * Carves the tunnels of every carver started by all chunks within range of this chunk.
+     * @param rand Random seeded for this chunk, used to place magma and obsidian in flooded caves
+     * @param validPositions The x-z coordinates each carver may carve in, indexed by carver. Carvers with null
+     *                       or no valid positions aren't carved in this chunk, and the others only carve
+     *                       within the bounding box of their valid positions.
+     */
+    public void generate(ISeedReader worldIn, Random rand, int chunkX, int chunkZ, SectionWriter writer, BlockState[][] liquidBlocks, BiomeSnapshot biomes, boolean[][][] validPositions, BitSet airCarvingMask, BitSet liquidCarvingMask) {
+        int numCarvers = carvers.size();
+        int chunkRadius = 0;
+        int[][] validBounds = new int[numCarvers][];
+        for (int i = 0; i < numCarvers; i++) {
+            if (validPositions[i] != null) {
+                validBounds[i] = getBounds(validPositions[i]);
+            }
+            if (validBounds[i] != null) {
+                chunkRadius = Math.max(chunkRadius, carvers.get(i).getRange());
+            }
+        }
+        if (chunkRadius == 0) {
+            return;
+        }
+
+        // Skeletons carving into this chunk, for each carver and chunk in range
+        int sweepWidth = chunkRadius * 2 + 1;
+        TunnelSkeleton[] found = new TunnelSkeleton[numCarvers * sweepWidth * sweepWidth];
+        long seed = worldIn.getSeed();
+        int index = 0;
+        for (int currChunkX = chunkX - chunkRadius; currChunkX <= chunkX + chunkRadius; ++currChunkX) {
+            for (int currChunkZ = chunkZ - chunkRadius; currChunkZ <= chunkZ + chunkRadius; ++currChunkZ) {
+                TunnelSkeleton[] chunkSkeletons = getSkeletons(seed, currChunkX, currChunkZ, validBounds);
+                for (int i = 0; i < numCarvers; i++) {
+                    if (validBounds[i] != null && chunkSkeletons[i].getEllipsoids(chunkX, chunkZ) != null) {
+                        found[i * sweepWidth * sweepWidth + index] = chunkSkeletons[i];
+                    }
+                }
+                index++;
+            }
+        }
+
+        // Carvers are carved one after another, since later carvers skip blocks already carved by earlier ones
+        for (int i = 0; i < found.length; i++) {
+            TunnelSkeleton skeleton = found[i];
+            if (skeleton == null) {
+                continue;
+            }
+            int carverIndex = i / (sweepWidth * sweepWidth);
+            VanillaCaveCarver carver = carvers.get(carverIndex);
+            for (int ellipsoid : skeleton.getEllipsoids(chunkX, chunkZ)) {
+                carver.carveEllipsoid(worldIn, rand, chunkX, chunkZ, writer, skeleton, ellipsoid, liquidBlocks, biomes, validPositions[carverIndex], validBounds[carverIndex], airCarvingMask, liquidCarvingMask);
+            }
+        }
+    }
+
+    /**
+     * @return the bounding box of the given valid positions, as {minX, maxX, minZ, maxZ} (inclusive),
+     * or null if no position is valid
+     */
+    private static int[] getBounds(boolean[][] validPositions) {
+        int[] bounds = null;
+        for (int x = 0; x < 16; x++) {
+            for (int z = 0; z < 16; z++) {
+                if (!validPositions[x][z]) {
+                    continue;
+                }
+                if (bounds == null) {
+                    bounds = new int[] {x, x, z, z};
+                }
+                bounds[1] = x;
+                bounds[2] = Math.min(bounds[2], z);
+                bounds[3] = Math.max(bounds[3], z);
+            }
+        }
+        return bounds;
+    }
+
+    /**
+     * @return the skeletons of the tunnels started by the given chunk, indexed by carver. Skeletons of carvers
+     * with valid bounds are simulated first if needed - the others may be null.
+     */
+    private TunnelSkeleton[] getSkeletons(long seed, int chunkX, int chunkZ, int[][] validBounds) {
+        long key = ChunkPos.asLong(chunkX, chunkZ);
+        TunnelSkeleton[] chunkSkeletons;
+        synchronized (skeletons) {
+            TunnelSkeleton[] cached = skeletons.get(key);
+            chunkSkeletons = cached == null ? new TunnelSkeleton[carvers.size()] : cached.clone();
+        }
+
+        boolean simulated = false;
+        for (int i = 0; i < chunkSkeletons.length; i++) {
+            if (validBounds[i] != null && (chunkSkeletons[i] == null || !chunkSkeletons[i].matches(seed, addRooms.get(i)))) {
+                // Simulated outside the lock so other threads aren't held up. Two threads may occasionally simulate
+                // the same chunk at once, in which case both get identical skeletons.
+                chunkSkeletons[i] = carvers.get(i).simulate(seed, chunkX, chunkZ, addRooms.get(i));
+                simulated = true;
+            }
+        }
+
+        if (simulated) {
+            synchronized (skeletons) {
+                // Keep skeletons other threads have simulated for other carvers in the meantime
+                TunnelSkeleton[] cached = skeletons.get(key);
+                TunnelSkeleton[] merged = chunkSkeletons.clone();
+                if (cached != null) {
+                    for (int i = 0; i < merged.length; i++) {
+                        if (validBounds[i] == null && cached[i] != null) {
+                            merged[i] = cached[i];
+                        }
+                    }
+                }
+                skeletons.put(key, merged);
+            }
+        }
+        return chunkSkeletons;
+    }
+}